@@ -0,0 +1,12 @@
+package com.tangenta.gqljs.benchmark;
+
+import com.tangenta.gqljs.Schema;
+import com.tangenta.gqljs.SchemaParser;
+import org.openjdk.jmh.annotations.Benchmark;
+
+public class ParserBenchmark extends Benchmarks {
+    @Benchmark
+    public Schema parseSchema(SchemaState state) {
+        return SchemaParser.parseSchema(state.source);
+    }
+}
@@ -0,0 +1,70 @@
+package com.tangenta.gqljs.benchmark;
+
+import com.tangenta.gqljs.GQLPrinter;
+import com.tangenta.gqljs.schemaType.Operation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+
+public class PrinterBenchmark extends Benchmarks {
+    @State(Scope.Benchmark)
+    public static class Target {
+        @Param({"jsConst", "jsFunc", "dsl", "javaImpl"})
+        public String target;
+    }
+
+    /** Discards output so only rendering is measured. */
+    private static final Writer NULL_WRITER = new Writer() {
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public Writer append(CharSequence csq) {
+            return this;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Benchmark
+    public void render(SchemaState state, Target target, Blackhole blackhole) throws IOException {
+        switch (target.target) {
+            case "jsConst":
+                GQLPrinter.toJSConst(state.schema, NULL_WRITER);
+                break;
+            case "jsFunc":
+                GQLPrinter.toJSFunc(state.schema, NULL_WRITER);
+                break;
+            case "dsl":
+                forEachOperation(state, op -> blackhole.consume(GQLPrinter.toDSL(state.schema, op.getName())));
+                break;
+            case "javaImpl":
+                forEachOperation(state, op -> blackhole.consume(GQLPrinter.toJavaImpl(state.schema, op.getName())));
+                break;
+            default:
+                throw new IllegalArgumentException(target.target);
+        }
+    }
+
+    private interface OperationConsumer {
+        void accept(Operation op);
+    }
+
+    private static void forEachOperation(SchemaState state, OperationConsumer consumer) {
+        Iterator<Operation> operations = state.schema.allOperations().iterator();
+        while (operations.hasNext()) consumer.accept(operations.next());
+    }
+}
@@ -0,0 +1,17 @@
+package com.tangenta.gqljs.benchmark;
+
+import com.tangenta.gqljs.Scanner;
+import org.openjdk.jmh.annotations.Benchmark;
+
+public class ScannerBenchmark extends Benchmarks {
+    @Benchmark
+    public int tokenize(SchemaState state) {
+        Scanner scanner = new Scanner(state.source);
+        int tokens = 0;
+        while (scanner.hasNext()) {
+            scanner.advance();
+            tokens++;
+        }
+        return tokens;
+    }
+}
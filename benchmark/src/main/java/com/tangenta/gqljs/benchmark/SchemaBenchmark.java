@@ -0,0 +1,31 @@
+package com.tangenta.gqljs.benchmark;
+
+import com.tangenta.gqljs.Schema;
+import com.tangenta.gqljs.schemaType.Operation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+
+public class SchemaBenchmark extends Benchmarks {
+    /** Validation plus the per-type variable closure, which is computed when the schema is built. */
+    @Benchmark
+    public Schema build(SchemaState state) {
+        Schema schema = state.schema;
+        Schema.SchemaBuilder builder = Schema.getBuilder(schema.getSymbols());
+        schema.queries.values().forEach(builder::appendQuery);
+        schema.mutations.values().forEach(builder::appendMutation);
+        schema.types.values().forEach(builder::appendType);
+        schema.unions.values().forEach(builder::appendUnion);
+        schema.enums.values().forEach(builder::appendEnume);
+        return builder.build();
+    }
+
+    @Benchmark
+    public void allVariablesForOper(SchemaState state, Blackhole blackhole) {
+        Iterator<Operation> operations = state.schema.allOperations().iterator();
+        while (operations.hasNext()) {
+            blackhole.consume(state.schema.allVariablesForOper(operations.next().getName()));
+        }
+    }
+}
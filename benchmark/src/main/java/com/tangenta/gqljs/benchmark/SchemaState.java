@@ -0,0 +1,34 @@
+package com.tangenta.gqljs.benchmark;
+
+import com.tangenta.gqljs.Schema;
+import com.tangenta.gqljs.SchemaParser;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Synthetic schema shared by all benchmarks; see {@link SyntheticSchema} for the parameters. */
+@State(Scope.Benchmark)
+public class SchemaState {
+    @Param({"10", "100"})
+    public int typesPerLevel;
+
+    @Param({"4"})
+    public int depth;
+
+    @Param({"1", "4"})
+    public int unionFanOut;
+
+    @Param({"0.2", "0.8"})
+    public double sharing;
+
+    public String source;
+    public Schema schema;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = SyntheticSchema.generate(typesPerLevel, depth, unionFanOut, sharing, 42);
+        schema = SchemaParser.parseSchema(source);
+    }
+}
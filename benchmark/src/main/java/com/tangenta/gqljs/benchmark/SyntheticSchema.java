@@ -0,0 +1,90 @@
+package com.tangenta.gqljs.benchmark;
+
+import java.util.Random;
+
+/**
+ * Generates schema source text of configurable shape.
+ *
+ * <p>Object types are arranged in {@code depth} levels and only reference types on the next level,
+ * so selection sets stay finite. Every operation returns a union of {@code Error} and one type of
+ * the first level. Each object field picks a shared type of the next level with probability
+ * {@code sharing} and a random one otherwise, so a higher sharing ratio means more types reached
+ * from many places. When {@code unionFanOut} is greater than one, every non-leaf type also gets a
+ * field returning a union of that many next-level types.
+ */
+public class SyntheticSchema {
+    private static final int SCALAR_FIELDS = 3;
+    private static final int OBJECT_FIELDS = 2;
+    private static final String[] SCALARS = {"ID!", "Int", "String!", "Boolean", "[String!]"};
+
+    public static String generate(int typesPerLevel, int depth, int unionFanOut, double sharing, long seed) {
+        Random random = new Random(seed);
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < typesPerLevel; i++) {
+            String prefix = (i % 4 == 0) ? "+@" : "@";
+            if (i % 3 == 0) {
+                builder.append(prefix).append("mutation update").append(i)
+                        .append("(id: ID!, input: Input").append(i % 8).append("): Result").append(i).append("!\n");
+            } else {
+                builder.append(prefix).append("query get").append(i)
+                        .append("(id: ID!, first: Int): Result").append(i).append("!\n");
+            }
+            builder.append("union Result").append(i).append(" = Error | ").append(typeName(0, i)).append("\n");
+        }
+
+        for (int level = 0; level < depth; level++) {
+            for (int i = 0; i < typesPerLevel; i++) {
+                builder.append("type ").append(typeName(level, i)).append(" {\n");
+                for (int f = 0; f < SCALAR_FIELDS; f++) {
+                    builder.append("    field").append(f).append(": ")
+                            .append(SCALARS[random.nextInt(SCALARS.length)]).append("\n");
+                }
+                if (level + 1 < depth) {
+                    for (int f = 0; f < OBJECT_FIELDS; f++) {
+                        int target = random.nextDouble() < sharing ? 0 : random.nextInt(typesPerLevel);
+                        builder.append("    child").append(f);
+                        if (f == 0) builder.append("(skip").append(level).append(": Int, take").append(level).append(": Int)");
+                        builder.append(": [").append(typeName(level + 1, target)).append("!]!\n");
+                    }
+                    if (unionFanOut > 1) {
+                        builder.append("    either: ").append(unionName(level, i)).append("\n");
+                    }
+                }
+                builder.append("    status: Status\n");
+                builder.append("}\n");
+
+                if (level + 1 < depth && unionFanOut > 1) {
+                    builder.append("union ").append(unionName(level, i)).append(" = ");
+                    for (int m = 0; m < unionFanOut; m++) {
+                        if (m != 0) builder.append(" | ");
+                        builder.append(typeName(level + 1, (i + m) % typesPerLevel));
+                    }
+                    builder.append("\n");
+                }
+            }
+        }
+
+        for (int i = 0; i < Math.min(typesPerLevel, 8); i++) {
+            builder.append("input Input").append(i).append(" {\n")
+                    .append("    name: String!\n")
+                    .append("    tags: [String!]\n")
+                    .append("}\n");
+        }
+        builder.append("type Error {\n    errCode: Int!\n    detail: String\n}\n");
+        builder.append("enum Status {\n    ACTIVE\n    DISABLED\n}\n");
+        return builder.toString();
+    }
+
+    private static String typeName(int level, int index) {
+        return "Level" + level + "Type" + index;
+    }
+
+    private static String unionName(int level, int index) {
+        return "Level" + level + "Either" + index;
+    }
+
+    public static void main(String[] args) {
+        System.out.println(generate(3, 3, 2, 0.5, 1));
+    }
+}
@@ -0,0 +1,65 @@
+package com.tangenta.gqljs.benchmark;
+
+import com.tangenta.gqljs.Schema;
+import com.tangenta.gqljs.SchemaParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parses definitions with a growing number of members with a deliberately small stack. Time per
+ * member should stay flat as the size doubles, and no size should overflow the stack.
+ */
+@Fork(value = 1, jvmArgsAppend = "-Xss256k")
+public class WideDefinitionBenchmark extends Benchmarks {
+    @State(Scope.Benchmark)
+    public static class WideSchema {
+        @Param({"25000", "50000", "100000"})
+        public int members;
+
+        public String source;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            StringBuilder builder = new StringBuilder(members * 64);
+            builder.append("@query big(");
+            for (int i = 0; i < members; i++) {
+                if (i != 0) builder.append(", ");
+                builder.append("arg").append(i).append(": Int");
+            }
+            builder.append("): Big!\n");
+
+            builder.append("type Big {\n");
+            for (int i = 0; i < members; i++) {
+                builder.append("    field").append(i).append(": [Int!]\n");
+            }
+            builder.append("}\n");
+
+            builder.append("enum Huge {\n");
+            for (int i = 0; i < members; i++) {
+                builder.append("    value").append(i).append("\n");
+            }
+            builder.append("}\n");
+
+            builder.append("union Wide = ");
+            for (int i = 0; i < members; i++) {
+                if (i != 0) builder.append(" | ");
+                builder.append("Member").append(i);
+            }
+            builder.append("\n");
+            for (int i = 0; i < members; i++) {
+                builder.append("type Member").append(i).append(" { id: ID! }\n");
+            }
+            source = builder.toString();
+        }
+    }
+
+    @Benchmark
+    public Schema parseWide(WideSchema state) {
+        return SchemaParser.parseSchema(state.source);
+    }
+}
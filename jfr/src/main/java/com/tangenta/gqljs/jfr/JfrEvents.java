@@ -0,0 +1,97 @@
+package com.tangenta.gqljs.jfr;
+
+import com.tangenta.gqljs.Metrics;
+import jdk.jfr.*;
+
+import java.util.Locale;
+
+/**
+ * Commits the phases of {@link Metrics} as Flight Recorder events and its counters as a periodic
+ * event. Found by Metrics as a service once this jar is on the class path of a JDK 11 or later.
+ */
+public final class JfrEvents implements Metrics.Listener {
+    private static final String CATEGORY = "GraphQL Generator";
+
+    @Name("com.tangenta.gqljs.Phase")
+    @Label("Generator Phase")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Allocated")
+        @Description("Bytes allocated by the thread during the phase, -1 if unknown")
+        @DataAmount
+        long allocatedBytes;
+    }
+
+    @Name("com.tangenta.gqljs.Counters")
+    @Label("Generator Counters")
+    @Category(CATEGORY)
+    @Period("1 s")
+    @StackTrace(false)
+    static class CountersEvent extends Event {
+        @Label("Tokens")
+        long tokens;
+
+        @Label("Definitions")
+        long definitions;
+
+        @Label("Operations Rendered")
+        long operations;
+
+        @Label("Selection Nodes")
+        long selectionNodes;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+
+        @Label("Selection Cache Hits")
+        long selectionCacheHits;
+
+        @Label("Selection Cache Misses")
+        long selectionCacheMisses;
+
+        @Label("Snapshot Hits")
+        long snapshotHits;
+
+        @Label("Snapshot Misses")
+        long snapshotMisses;
+    }
+
+    public JfrEvents() {
+        FlightRecorder.addPeriodicEvent(CountersEvent.class, () -> {
+            CountersEvent event = new CountersEvent();
+            event.tokens = Metrics.get(Metrics.Counter.TOKENS);
+            event.definitions = Metrics.get(Metrics.Counter.DEFINITIONS);
+            event.operations = Metrics.get(Metrics.Counter.OPERATIONS);
+            event.selectionNodes = Metrics.get(Metrics.Counter.SELECTION_NODES);
+            event.bytesWritten = Metrics.get(Metrics.Counter.BYTES_WRITTEN);
+            event.selectionCacheHits = Metrics.get(Metrics.Counter.SELECTION_CACHE_HITS);
+            event.selectionCacheMisses = Metrics.get(Metrics.Counter.SELECTION_CACHE_MISSES);
+            event.snapshotHits = Metrics.get(Metrics.Counter.SNAPSHOT_HITS);
+            event.snapshotMisses = Metrics.get(Metrics.Counter.SNAPSHOT_MISSES);
+            event.commit();
+        });
+    }
+
+    /** A started event for {@code phase}, or null if nobody records it. */
+    @Override
+    public Object begin(Metrics.Phase phase) {
+        PhaseEvent event = new PhaseEvent();
+        if (!event.isEnabled()) return null;
+        event.phase = phase.name().toLowerCase(Locale.ROOT);
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void end(Object started, long allocatedBytes) {
+        if (started == null) return;
+        PhaseEvent event = (PhaseEvent) started;
+        event.allocatedBytes = allocatedBytes;
+        event.commit();
+    }
+}
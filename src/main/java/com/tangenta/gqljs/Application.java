@@ -1,21 +1,114 @@
 package com.tangenta.gqljs;
 
+import lombok.val;
+
+import java.io.FilterWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 public class Application {
-    public static void main(String[] args) throws IOException {
-        Schema schema = buildSchemaFromFile("D:\\bbs-gql-test\\bbsgql.txt");
-        printJSConst(schema, "D:\\bbs-gql-test\\bbsgql-const.js");
-        printJSFunc(schema, "D:\\bbs-gql-test\\bbsgql-func.js");
-//        printJava(schema, "cancelClaimFound");
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private static final String USAGE = "usage: [options] <schema> <const.js> <func.js>\n" +
+            "       --watch [options] <schema> <const.js> <func.js>  (not with --fragments, --manifest, --loaders, --java-client)\n" +
+            "       --daemon\n" +
+            "options:\n" +
+            "       --metrics           print time, allocation and counters of every phase as JSON to stderr\n" +
+            "       --fragments <n>     extract selection sets used by at least n operations into fragments\n" +
+            "       --persisted         send only the hash of each document, falling back to the full text\n" +
+            "       --manifest <file>   also write the persisted query manifest\n" +
+            "       --loaders <file>    also write Java batch loaders for resolving fields of object types\n" +
+            "       --java-client <file> also write a Java client with a class per operation\n" +
+            "       --minify            strip all optional whitespace from query documents and report the savings\n" +
+            "       --typenames         select __typename in every union selection\n" +
+            "       --batch             coalesce concurrent calls into array-batched requests\n" +
+            "       --batch-window <ms> collect calls for this long before sending, default end of tick\n" +
+            "       --batch-max <n>     send a batch once it holds n calls, default 10";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        val rest = new ArrayList<String>(Arrays.asList(args));
+        PrintOptions options = parseOptions(rest);
+        String manifest = removeOption(rest, "--manifest");
+        String loaders = removeOption(rest, "--loaders");
+        String javaClient = removeOption(rest, "--java-client");
+        boolean metrics = rest.remove("--metrics");
+        if (metrics) Metrics.enable();
+        if (rest.size() == 1 && rest.get(0).equals("--daemon")) {
+            new GeneratorDaemon(System.in, System.out).run();
+        } else if (rest.size() == 4 && rest.get(0).equals("--watch") && options.getFragmentThreshold() == 0
+                && manifest == null && loaders == null && javaClient == null) {
+            new SchemaWatcher(Paths.get(rest.get(1)), Paths.get(rest.get(2)), Paths.get(rest.get(3)), options).run();
+        } else if (rest.size() == 3) {
+            Schema schema = loadSchema(rest.get(0));
+            printJSConst(schema, rest.get(1), options, ForkJoinPool.commonPool());
+            printJSFunc(schema, rest.get(2), options, ForkJoinPool.commonPool());
+            if (manifest != null) printManifest(schema, manifest, options);
+            if (loaders != null) printJavaLoaders(schema, loaders);
+            if (javaClient != null) printJavaClient(schema, javaClient, options);
+            if (options.isMinify()) System.out.print(GQLPrinter.toMinifyReport(schema, options));
+            if (metrics) System.err.println(Metrics.report());
+        } else {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+    }
+
+    /** Removes the print options from {@code args} and returns them. */
+    static PrintOptions parseOptions(List<String> args) {
+        val options = PrintOptions.getBuilder();
+        String fragments = removeOption(args, "--fragments");
+        if (fragments != null) options.fragmentThreshold(Integer.parseInt(fragments));
+        options.persistedQueries(args.remove("--persisted"));
+        options.minify(args.remove("--minify"));
+        options.unionTypenames(args.remove("--typenames"));
+        options.batching(args.remove("--batch"));
+        String batchWindow = removeOption(args, "--batch-window");
+        if (batchWindow != null) options.batching(true).batchWindowMillis(Integer.parseInt(batchWindow));
+        String batchMax = removeOption(args, "--batch-max");
+        if (batchMax != null) options.batching(true).batchMaxSize(Integer.parseInt(batchMax));
+        return options.build();
+    }
+
+    /** Removes {@code name} and the value following it from {@code args} and returns the value, or null if absent. */
+    static String removeOption(List<String> args, String name) {
+        int index = args.indexOf(name);
+        if (index < 0) return null;
+        if (index + 1 >= args.size()) throw new RuntimeException(name + " expects a value");
+        String value = args.get(index + 1);
+        args.subList(index, index + 2).clear();
+        return value;
     }
 
     public static Schema buildSchemaFromFile(String fileName) throws IOException {
-        byte[] allBytes = Files.readAllBytes(Paths.get(fileName));
-        return SchemaParser.parseSchema(new String(allBytes));
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            return SchemaParser.parseSchema(channel, StandardCharsets.UTF_8);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Like {@link #buildSchemaFromFile} but reuses a snapshot of the parsed schema while the file is
+     * unchanged. A directory or glob is loaded as a schema split across files, see {@link SchemaLoader}.
+     */
+    public static Schema loadSchema(String location) throws IOException {
+        if (SchemaLoader.isMultiFile(location)) {
+            val result = SchemaLoader.load(location, ForkJoinPool.commonPool());
+            System.out.print(SchemaLoader.report(result));
+            return result.getSchema();
+        }
+        return SchemaSnapshot.load(Paths.get(location));
     }
 
     public static void printJava(Schema schema, String schemaType) {
@@ -24,12 +117,79 @@ public class Application {
     }
 
     public static void printJSConst(Schema schema, String filePath) throws IOException {
-        Files.write(Paths.get(filePath),
-                GQLPrinter.toJSConst(schema).getBytes(StandardCharsets.UTF_8));
+        try (Writer writer = openWriter(filePath)) {
+            GQLPrinter.toJSConst(schema, writer);
+        }
+    }
+
+    public static void printJSConst(Schema schema, String filePath, Executor executor) throws IOException {
+        try (Writer writer = openWriter(filePath)) {
+            GQLPrinter.toJSConst(schema, writer, new SelectionCache(), executor);
+        }
+    }
+
+    public static void printJSConst(Schema schema, String filePath, PrintOptions options, Executor executor) throws IOException {
+        try (Writer writer = openWriter(filePath)) {
+            GQLPrinter.toJSConst(schema, writer, options, executor);
+        }
     }
 
     public static void printJSFunc(Schema schema, String filePath) throws IOException {
-        Files.write(Paths.get(filePath),
-                GQLPrinter.toJSFunc(schema).getBytes(StandardCharsets.UTF_8));
+        try (Writer writer = openWriter(filePath)) {
+            GQLPrinter.toJSFunc(schema, writer);
+        }
+    }
+
+    public static void printJSFunc(Schema schema, String filePath, Executor executor) throws IOException {
+        try (Writer writer = openWriter(filePath)) {
+            GQLPrinter.toJSFunc(schema, writer, executor);
+        }
+    }
+
+    public static void printJSFunc(Schema schema, String filePath, PrintOptions options, Executor executor) throws IOException {
+        try (Writer writer = openWriter(filePath)) {
+            GQLPrinter.toJSFunc(schema, writer, options, executor);
+        }
+    }
+
+    /** Writes {@link GQLPrinter#toJavaLoaders} to a Java file, naming the class after the file. */
+    public static void printJavaLoaders(Schema schema, String filePath) throws IOException {
+        try (Writer writer = openWriter(filePath)) {
+            GQLPrinter.toJavaLoaders(schema, javaClassName(filePath), writer);
+        }
+    }
+
+    private static String javaClassName(String filePath) {
+        return Paths.get(filePath).getFileName().toString().replaceFirst("\\.java$", "");
+    }
+
+    /** Writes {@link JavaClientPrinter#toJavaClient} to a Java file, naming the class after the file. */
+    public static void printJavaClient(Schema schema, String filePath, PrintOptions options) throws IOException {
+        try (Writer writer = openWriter(filePath)) {
+            JavaClientPrinter.toJavaClient(schema, javaClassName(filePath), options, writer);
+        }
+    }
+
+    public static void printManifest(Schema schema, String filePath, PrintOptions options) throws IOException {
+        try (Writer writer = openWriter(filePath)) {
+            PersistedQueries.writeManifest(PersistedQueries.manifest(schema, options), writer);
+        }
+    }
+
+    static Writer openWriter(String filePath) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(filePath),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), OUTPUT_BUFFER_SIZE);
+        if (!Metrics.isEnabled()) return writer;
+        return new FilterWriter(writer) {
+            @Override
+            public void close() throws IOException {
+                if (channel.isOpen()) {
+                    flush();
+                    Metrics.count(Metrics.Counter.BYTES_WRITTEN, channel.position());
+                }
+                super.close();
+            }
+        };
     }
 }
@@ -0,0 +1,55 @@
+package com.tangenta.gqljs;
+
+import com.tangenta.gqljs.schemaType.*;
+import lombok.Value;
+
+/**
+ * A parsed top-level definition together with the span of source it was parsed from.
+ */
+@Value
+public class Definition {
+    Scanner.Keyword keyword;
+    Object value;
+    int start;
+    int end;
+    int line;
+    int column;
+
+    public String getName() {
+        if (value instanceof Operation) return ((Operation) value).getName();
+        if (value instanceof Type) return ((Type) value).getName();
+        if (value instanceof Union) return ((Union) value).getName();
+        return ((Enume) value).getName();
+    }
+
+    public boolean isOperation() {
+        return value instanceof Operation;
+    }
+
+    Definition moved(int offsetDelta, int lineDelta, int columnDelta) {
+        return new Definition(keyword, value, start + offsetDelta, end + offsetDelta,
+                line + lineDelta, column + columnDelta);
+    }
+
+    Definition withValue(Object value) {
+        return new Definition(keyword, value, start, end, line, column);
+    }
+
+    public Position getPosition() {
+        return new Position(line, column);
+    }
+
+    void appendTo(Schema.SchemaBuilder builder) {
+        appendTo(builder, getPosition());
+    }
+
+    void appendTo(Schema.SchemaBuilder builder, Position position) {
+        switch (keyword) {
+            case QUERY: case AUTH_QUERY: builder.appendQuery((Query) value, position); break;
+            case MUTATION: case AUTH_MUTATION: builder.appendMutation((Mutation) value, position); break;
+            case TYPE: case INPUT: builder.appendType((Type) value, position); break;
+            case UNION: builder.appendUnion((Union) value, position); break;
+            case ENUM: builder.appendEnume((Enume) value, position); break;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.tangenta.gqljs;
+
+import com.tangenta.gqljs.schemaType.Operation;
+import com.tangenta.gqljs.schemaType.Type;
+import com.tangenta.gqljs.schemaType.Union;
+import com.tangenta.gqljs.schemaType.util.GqlDef;
+import com.tangenta.gqljs.schemaType.util.Symbols;
+import lombok.val;
+
+import java.util.*;
+
+/**
+ * The types and unions selected by at least a threshold number of operations. Their selection sets
+ * are rendered once as named fragments, and every operation document includes the definitions of
+ * all fragments it reaches, directly or through other fragments.
+ */
+final class Fragments {
+    private final Schema schema;
+    private final Map<Integer, BitSet> reachable = new HashMap<>();
+    private final BitSet fragmented = new BitSet();
+    private final List<Integer> ordered = new ArrayList<>();
+
+    private Fragments(Schema schema) {
+        this.schema = schema;
+    }
+
+    static Fragments of(Schema schema, int threshold) {
+        val fragments = new Fragments(schema);
+        val uses = new HashMap<Integer, Integer>();
+        schema.allOperations().forEach(op -> fragments.reachableFrom(op.getRetTypeId()).stream()
+                .forEach(id -> uses.merge(id, 1, Integer::sum)));
+
+        val candidates = new ArrayList<Integer>();
+        schema.types.values().forEach(type -> candidates.add(type.getId()));
+        schema.unions.values().forEach(union -> candidates.add(union.getId()));
+        for (int id : candidates) {
+            if (uses.getOrDefault(id, 0) >= threshold) {
+                fragments.fragmented.set(id);
+                fragments.ordered.add(id);
+            }
+        }
+        return fragments;
+    }
+
+    boolean contains(int typeId) {
+        return fragmented.get(typeId);
+    }
+
+    /** Every fragment, in declaration order. */
+    List<Integer> all() {
+        return ordered;
+    }
+
+    /** The fragments the document of {@code op} has to define, in declaration order. */
+    List<Integer> usedBy(Operation op) {
+        BitSet reached = reachableFrom(op.getRetTypeId());
+        val used = new ArrayList<Integer>();
+        for (int id : ordered) {
+            if (reached.get(id)) used.add(id);
+        }
+        return used;
+    }
+
+    String name(int typeId) {
+        return schema.getSymbols().name(typeId) + "Fields";
+    }
+
+    /** Types and unions whose selection set is part of the one of {@code typeId}, including itself. */
+    private BitSet reachableFrom(int typeId) {
+        return reachableFrom(typeId, new BitSet());
+    }
+
+    private BitSet reachableFrom(int typeId, BitSet onPath) {
+        BitSet cached = reachable.get(typeId);
+        if (cached != null) return cached;
+        val result = new BitSet();
+        Type type = schema.kindOf(typeId) == Symbols.Kind.TYPE ? schema.typeById(typeId) : null;
+        Union union = schema.unionById(typeId);
+        if (type == null && union == null) return result;
+
+        if (onPath.get(typeId)) {
+            throw new RuntimeException("type: " + schema.getSymbols().name(typeId) + " selects itself, its selection set would be infinite");
+        }
+        onPath.set(typeId);
+        result.set(typeId);
+        if (type != null) {
+            for (GqlDef gqlDef : type.getFieldTypeMap()) result.or(reachableFrom(gqlDef.getRetTypeId(), onPath));
+        }
+        if (union != null) {
+            for (int i = 0; i < union.getSubTypes().size(); i++) result.or(reachableFrom(union.getSubTypeId(i), onPath));
+        }
+        onPath.clear(typeId);
+        reachable.put(typeId, result);
+        return result;
+    }
+}
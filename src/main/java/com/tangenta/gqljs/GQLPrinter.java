@@ -1,290 +1,1055 @@
 package com.tangenta.gqljs;
 
+import com.tangenta.gqljs.schemaType.CachePolicy;
 import com.tangenta.gqljs.schemaType.Operation;
 import com.tangenta.gqljs.schemaType.Query;
 import com.tangenta.gqljs.schemaType.Type;
 import com.tangenta.gqljs.schemaType.Union;
 import com.tangenta.gqljs.schemaType.util.GqlDef;
-import com.tangenta.gqljs.schemaType.util.Util;
+import com.tangenta.gqljs.schemaType.util.Symbols;
+import com.tangenta.gqljs.schemaType.util.TypeRef;
 import lombok.val;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Optional;
-import java.util.function.Function;
-import java.util.function.IntConsumer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
+/**
+ * Every target can either be returned as a String or streamed into an {@link Appendable}. When
+ * streaming, each operation is rendered into a reused scratch buffer and handed to the output as a
+ * whole, so memory use is bounded by the largest operation rather than by the whole output.
+ *
+ * <p>Rendering only reads the {@link Schema}, so the JS targets can also render operations in
+ * parallel on a given {@link Executor}.
+ */
 public class GQLPrinter {
-    private static final String INDENT = "  ";
-    private static final String DINDENT = INDENT + INDENT;
+    static final String INDENT = "  ";
+    static final String DINDENT = INDENT + INDENT;
+    /**
+     * Sends through {@code %1$s}, which like sendGQL has to return a promise of the response body
+     * and send extensions along.
+     */
+    private static final String SEND_PERSISTED_GQL = lines(
+            "const sendPersistedGQL = (request, sha256Hash) => {",
+            "  const extensions = { persistedQuery: { version: 1, sha256Hash } };",
+            "  const { query, ...hashOnly } = request;",
+            "  return %1$s({ ...hashOnly, extensions }).then(response =>",
+            "    response && response.errors && response.errors.some(e => e.message === 'PersistedQueryNotFound')",
+            "      ? %1$s({ ...request, extensions })",
+            "      : response);",
+            "};");
+    /**
+     * Caches responses of queries with a {@code @cache} directive per operation and key, evicting the
+     * least recently used entry beyond the limit. Concurrent calls with the same key share one
+     * request. Failed requests and responses with errors are not kept.
+     */
+    private static final String CACHED_GQL = lines(
+            "const gqlCaches = new Map();",
+            "",
+            "const cachedGQL = (operation, ttlSeconds, maxEntries, key, send) => {",
+            "  let cache = gqlCaches.get(operation);",
+            "  if (!cache) gqlCaches.set(operation, cache = new Map());",
+            "  const cacheKey = JSON.stringify(key);",
+            "  const cached = cache.get(cacheKey);",
+            "  cache.delete(cacheKey);",
+            "  if (cached && (cached.expires === null || cached.expires > Date.now())) {",
+            "    cache.set(cacheKey, cached);",
+            "    return cached.response;",
+            "  }",
+            "  const entry = { expires: null, response: null };",
+            "  const forget = () => cache.get(cacheKey) === entry && cache.delete(cacheKey);",
+            "  entry.response = send().then(response => {",
+            "    if (response && response.errors) forget();",
+            "    else entry.expires = Date.now() + ttlSeconds * 1000;",
+            "    return response;",
+            "  }, error => {",
+            "    forget();",
+            "    throw error;",
+            "  });",
+            "  cache.set(cacheKey, entry);",
+            "  while (cache.size > maxEntries) cache.delete(cache.keys().next().value);",
+            "  return entry.response;",
+            "};",
+            "",
+            "const clearGQLCache = operation => operation === undefined ? gqlCaches.clear() : gqlCaches.delete(operation);");
+    /**
+     * Collects the keys requested from one loader and loads them in one call on dispatch. Loads are
+     * memoized, so a key is loaded at most once per instance. Not thread-safe; use one per request.
+     */
+    private static final String DATA_LOADER = lines(
+            "  public interface BatchLoader<K, V> {",
+            "    Map<K, V> loadMany(List<K> keys);",
+            "  }",
+            "",
+            "  public static final class DataLoader<K, V> {",
+            "    private final BatchLoader<K, V> batchLoader;",
+            "    private final Map<K, CompletableFuture<V>> loads = new HashMap<>();",
+            "    private Map<K, CompletableFuture<V>> pending = new LinkedHashMap<>();",
+            "",
+            "    public DataLoader(BatchLoader<K, V> batchLoader) {",
+            "      this.batchLoader = batchLoader;",
+            "    }",
+            "",
+            "    public CompletableFuture<V> load(K key) {",
+            "      CompletableFuture<V> load = loads.get(key);",
+            "      if (load == null) {",
+            "        load = new CompletableFuture<>();",
+            "        loads.put(key, load);",
+            "        pending.put(key, load);",
+            "      }",
+            "      return load;",
+            "    }",
+            "",
+            "    /** Loads every key requested since the last dispatch in one call and returns whether there were any. */",
+            "    public boolean dispatch() {",
+            "      if (pending.isEmpty()) return false;",
+            "      Map<K, CompletableFuture<V>> batch = pending;",
+            "      pending = new LinkedHashMap<>();",
+            "      Map<K, V> values;",
+            "      try {",
+            "        values = batchLoader.loadMany(new ArrayList<>(batch.keySet()));",
+            "      } catch (RuntimeException e) {",
+            "        batch.values().forEach(load -> load.completeExceptionally(e));",
+            "        return true;",
+            "      }",
+            "      batch.forEach((key, load) -> load.complete(values.get(key)));",
+            "      return true;",
+            "    }",
+            "  }");
+    /**
+     * Queues requests and sends each queue as one array-batched request through sendGQLBatch, which
+     * has to return a promise of the array of response bodies in request order. A queue is sent at
+     * the end of the current tick, or after the window if it is positive, or as soon as it is full.
+     * Requests with different auth are sent in separate batches, and single requests via sendGQL.
+     */
+    private static final String BATCH_GQL = lines(
+            "let gqlBatchWindowMs = %d;",
+            "let gqlBatchMaxSize = %d;",
+            "let gqlBatchQueue = [];",
+            "let gqlBatchTimer = null;",
+            "",
+            "const configureGQLBatch = ({ windowMs = gqlBatchWindowMs, maxSize = gqlBatchMaxSize } = {}) => {",
+            "  gqlBatchWindowMs = windowMs;",
+            "  gqlBatchMaxSize = maxSize;",
+            "};",
+            "",
+            "const flushGQLBatch = () => {",
+            "  const queue = gqlBatchQueue;",
+            "  gqlBatchQueue = [];",
+            "  if (gqlBatchTimer !== null) clearTimeout(gqlBatchTimer);",
+            "  gqlBatchTimer = null;",
+            "  const byAuth = new Map();",
+            "  queue.forEach(entry => {",
+            "    const batch = byAuth.get(entry.request.auth) || [];",
+            "    batch.push(entry);",
+            "    byAuth.set(entry.request.auth, batch);",
+            "  });",
+            "  byAuth.forEach(batch => {",
+            "    const sent = batch.length === 1",
+            "      ? sendGQL(batch[0].request).then(response => [response])",
+            "      : sendGQLBatch(batch.map(entry => entry.request));",
+            "    sent.then(",
+            "      responses => batch.forEach((entry, i) => entry.resolve(responses[i])),",
+            "      error => batch.forEach(entry => entry.reject(error)));",
+            "  });",
+            "};",
+            "",
+            "const batchGQL = request => new Promise((resolve, reject) => {",
+            "  gqlBatchQueue.push({ request, resolve, reject });",
+            "  if (gqlBatchQueue.length >= gqlBatchMaxSize) {",
+            "    flushGQLBatch();",
+            "  } else if (gqlBatchQueue.length === 1) {",
+            "    if (gqlBatchWindowMs > 0) gqlBatchTimer = setTimeout(flushGQLBatch, gqlBatchWindowMs);",
+            "    else Promise.resolve().then(flushGQLBatch);",
+            "  }",
+            "});");
+
+    private interface Rendering {
+        void renderTo(Appendable out) throws IOException;
+    }
+
+    static String lines(String... lines) {
+        return String.join("\n", lines) + "\n";
+    }
+
+    private static String render(Rendering rendering) {
+        val builder = new StringBuilder();
+        try {
+            rendering.renderTo(builder);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return builder.toString();
+    }
 
     public static String toJavaImpl(Schema schema, String schemaType) {
+        return render(out -> toJavaImpl(schema, schemaType, out));
+    }
+
+    public static void toJavaImpl(Schema schema, String schemaType, Appendable out) throws IOException {
         val builder = new StringBuilder();
         Operation operation = schema.allOperations()
                 .filter(op -> op.getName().equals(schemaType))
                 .findFirst()
-                .orElseThrow(() -> new RuntimeException("impossible"));
-
-        builder.append(javaMethod(operation)).append("\n");
-
-        operation.getArgs().values().stream()
-                .map(typeStr -> schema.findType(Util.strip(typeStr)))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .forEach(type -> {
-                    if (type.getTypename().equals("input")) {
-                        builder.append(javaPubStaticClass(type)).append("\n");
-                    }
-                });
-
-        String retType = operation.getStrippedRetType();
-        schema.findUnion(retType).ifPresent(union -> {
-            union.getSubTypes().forEach(subType -> {
-                schema.findType(subType).ifPresent(type -> {
-                    builder.append(javaPlainInterface(type, union.getName())).append("\n");
-                });
-            });
-
-            builder.append(javaSuperInterface(union)).append("\n");
-        });
+                .orElseThrow(() -> new RuntimeException(schemaType + " not found"));
+
+        javaMethod(builder, operation).append("\n");
 
-        schema.findType(retType).ifPresent(type -> {
-            builder.append(javaPlainInterface(type, null)).append("\n");
+        operation.getArgs().values().forEach(typeRef -> {
+            Type type = schema.typeById(typeRef.getBaseId());
+            if (type != null && type.getTypename().equals("input")) {
+                javaPubStaticClass(builder, type).append("\n");
+            }
         });
 
-        return builder.toString();
+        Union union = schema.unionById(operation.getRetTypeId());
+        if (union != null) {
+            for (int i = 0; i < union.getSubTypes().size(); i++) {
+                Type type = schema.typeById(union.getSubTypeId(i));
+                if (type != null) javaPlainInterface(builder, type, union.getName()).append("\n");
+            }
+            javaSuperInterface(builder, union).append("\n");
+        }
+
+        Type type = schema.typeById(operation.getRetTypeId());
+        if (type != null) javaPlainInterface(builder, type, null).append("\n");
+
+        out.append(builder);
+    }
+
+    public static String toJavaLoaders(Schema schema, String className) {
+        return render(out -> toJavaLoaders(schema, className, out));
+    }
+
+    /**
+     * Renders a class for resolving fields in batches instead of one lookup per object. Every field
+     * of an object type that returns an object type or a union gets a batch loader interface, keyed
+     * by the object the field is resolved on, together with the field arguments if it has any.
+     * {@code RequestLoaders} wraps one instance of each per request: resolvers call its methods to request
+     * values, and {@code dispatch()} then loads them loader by loader with one call each, until
+     * completing the loads requests nothing more.
+     */
+    public static void toJavaLoaders(Schema schema, String className, Appendable out) throws IOException {
+        Metrics.Span span = Metrics.start(Metrics.Phase.RENDER);
+        val fields = new ArrayList<Type>();
+        val defs = new ArrayList<GqlDef>();
+        for (Type type : schema.types.values()) {
+            if (type.getTypename().equals("input")) continue;
+            for (GqlDef gqlDef : type.getFieldTypeMap()) {
+                if (isLeaf(schema, gqlDef.getRetTypeId())) continue;
+                fields.add(type);
+                defs.add(gqlDef);
+            }
+        }
+
+        val builder = new StringBuilder();
+        builder.append("import java.util.*;\n")
+                .append("import java.util.concurrent.CompletableFuture;\n\n")
+                .append("public final class ").append(className).append(" {\n")
+                .append(DATA_LOADER);
+
+        for (int i = 0; i < defs.size(); i++) {
+            Type type = fields.get(i);
+            GqlDef gqlDef = defs.get(i);
+            builder.append("\n");
+            if (!gqlDef.getParams().isEmpty()) javaLoaderKey(builder, type, gqlDef, loaderParams(schema, type, gqlDef)).append("\n");
+            builder.append(INDENT).append("public interface ");
+            capitalize(builder, loaderName(type, gqlDef)).append("Loader extends BatchLoader<");
+            javaLoaderKeyType(builder, type, gqlDef).append(", ");
+            javaType(builder, gqlDef.getRetType()).append("> {}\n");
+        }
+
+        builder.append("\n").append(INDENT).append("public interface BatchLoaders {\n");
+        for (int i = 0; i < defs.size(); i++) {
+            String name = loaderName(fields.get(i), defs.get(i));
+            capitalize(builder.append(DINDENT), name).append("Loader ").append(name).append("();\n");
+        }
+        builder.append(INDENT).append("}\n");
+
+        builder.append("\n").append(INDENT).append("public static final class RequestLoaders {\n")
+                .append(DINDENT).append("private final List<DataLoader<?, ?>> all = new ArrayList<>();\n");
+        for (int i = 0; i < defs.size(); i++) {
+            builder.append(DINDENT).append("private final DataLoader<");
+            javaLoaderKeyType(builder, fields.get(i), defs.get(i)).append(", ");
+            javaType(builder, defs.get(i).getRetType()).append("> ").append(loaderName(fields.get(i), defs.get(i))).append(";\n");
+        }
+        builder.append("\n").append(DINDENT).append("public RequestLoaders(BatchLoaders loaders) {\n");
+        for (int i = 0; i < defs.size(); i++) {
+            String name = loaderName(fields.get(i), defs.get(i));
+            builder.append(DINDENT).append(INDENT).append(name).append(" = register(loaders.").append(name).append("());\n");
+        }
+        builder.append(DINDENT).append("}\n");
+        builder.append("\n")
+                .append(DINDENT).append("private <K, V> DataLoader<K, V> register(BatchLoader<K, V> batchLoader) {\n")
+                .append(DINDENT).append(INDENT).append("DataLoader<K, V> loader = new DataLoader<>(batchLoader);\n")
+                .append(DINDENT).append(INDENT).append("all.add(loader);\n")
+                .append(DINDENT).append(INDENT).append("return loader;\n")
+                .append(DINDENT).append("}\n");
+
+        for (int i = 0; i < defs.size(); i++) {
+            Type type = fields.get(i);
+            GqlDef gqlDef = defs.get(i);
+            String name = loaderName(type, gqlDef);
+            val params = loaderParams(schema, type, gqlDef);
+            builder.append("\n").append(DINDENT).append("public CompletableFuture<");
+            javaType(builder, gqlDef.getRetType()).append("> ").append(name).append("(");
+            javaLoaderParams(builder, params).append(") {\n")
+                    .append(DINDENT).append(INDENT).append("return ").append(name).append(".load(");
+            if (gqlDef.getParams().isEmpty()) {
+                builder.append(params.keySet().iterator().next());
+            } else {
+                builder.append("new ");
+                javaLoaderKeyType(builder, type, gqlDef).append("(").append(String.join(", ", params.keySet())).append(")");
+            }
+            builder.append(");\n").append(DINDENT).append("}\n");
+        }
+
+        builder.append("\n")
+                .append(DINDENT).append("public void dispatch() {\n")
+                .append(DINDENT).append(INDENT).append("boolean loaded;\n")
+                .append(DINDENT).append(INDENT).append("do {\n")
+                .append(DINDENT).append(DINDENT).append("loaded = false;\n")
+                .append(DINDENT).append(DINDENT).append("for (DataLoader<?, ?> loader : all) loaded |= loader.dispatch();\n")
+                .append(DINDENT).append(INDENT).append("} while (loaded);\n")
+                .append(DINDENT).append("}\n")
+                .append(INDENT).append("}\n")
+                .append("}\n");
+        Metrics.stop(span);
+        out.append(builder);
     }
 
     public static String toDSL(Schema schema, String schemaType) {
+        return render(out -> toDSL(schema, schemaType, out));
+    }
+
+    public static void toDSL(Schema schema, String schemaType, Appendable out) throws IOException {
         Operation operation = schema.allOperations().filter(op -> op.getName().equals(schemaType))
                 .findFirst().orElse(null);
         if (operation == null) throw new RuntimeException(schemaType + " not found");
 
         val builder = new StringBuilder();
 
-        String retType = operation.getStrippedRetType();
-        schema.findUnion(retType).ifPresent(union -> {
-            union.getSubTypes().forEach(subType -> {
-                Type type = schema.findType(subType).orElseThrow(() -> new RuntimeException("impossible"));
-                builder.append(typeDef(type)).append("\n");
-            });
+        Union union = schema.unionById(operation.getRetTypeId());
+        if (union != null) {
+            for (int i = 0; i < union.getSubTypes().size(); i++) {
+                Type type = schema.typeById(union.getSubTypeId(i));
+                if (type == null) throw new RuntimeException("impossible");
+                typeDef(builder, type).append("\n");
+            }
+            unionDef(builder, union).append("\n");
+        }
+
+        Type type = schema.typeById(operation.getRetTypeId());
+        if (type != null) typeDef(builder, type).append("\n");
 
-            builder.append(unionDef(union)).append("\n");
-        });
+        out.append(builder);
+    }
+
+    public static String toJSFunc(Schema schema) {
+        return render(out -> toJSFunc(schema, out));
+    }
 
-        schema.findType(retType).ifPresent(type -> {
-            builder.append(typeDef(type)).append("\n");
+    public static void toJSFunc(Schema schema, Appendable out) throws IOException {
+        toJSFunc(schema, out, PrintOptions.DEFAULT, null);
+    }
+
+    public static void toJSFunc(Schema schema, Appendable out, Executor executor) throws IOException {
+        toJSFunc(schema, out, PrintOptions.DEFAULT, executor);
+    }
+
+    public static String toJSFunc(Schema schema, PrintOptions options) {
+        return render(out -> toJSFunc(schema, out, options, null));
+    }
+
+    /**
+     * Renders with the given options. With persisted queries, every function first sends only the
+     * SHA-256 of its document as {@code extensions.persistedQuery}, and sends the full document
+     * again if the server answers {@code PersistedQueryNotFound}. Documents are hashed as rendered
+     * by {@link #toDocuments} with the same options, which the constants must be rendered with too.
+     *
+     * <p>Queries with a {@code @cache} directive go through a cache in front of the transport, and
+     * {@code clearGQLCache(operation)} drops cached responses, for example after a mutation.
+     */
+    public static void toJSFunc(Schema schema, Appendable out, PrintOptions options, Executor executor) throws IOException {
+        out.append(jsFuncPreamble(schema, options));
+        if (!options.isPersistedQueries()) {
+            String send = transport(options);
+            renderOperations(schema, out, executor, (builder, op) -> jsFunc(builder, op, send, null));
+            return;
+        }
+        val hashes = new HashMap<String, String>();
+        toDocuments(schema, options).forEach((name, document) -> hashes.put(name, PersistedQueries.sha256(document)));
+        renderOperations(schema, out, executor,
+                (builder, op) -> jsFunc(builder, op, "sendPersistedGQL", hashes.get(op.getName())));
+    }
+
+    private static String transport(PrintOptions options) {
+        return options.isBatching() ? "batchGQL" : "sendGQL";
+    }
+
+    public static String toJSConst(Schema schema) {
+        return toJSConst(schema, new SelectionCache());
+    }
+
+    public static String toJSConst(Schema schema, SelectionCache cache) {
+        return render(out -> toJSConst(schema, out, cache));
+    }
+
+    public static void toJSConst(Schema schema, Appendable out) throws IOException {
+        toJSConst(schema, out, new SelectionCache());
+    }
+
+    public static void toJSConst(Schema schema, Appendable out, SelectionCache cache) throws IOException {
+        renderOperations(schema, out, null, (builder, op) -> jsConst(builder, schema, op, cache, null, PrintOptions.DEFAULT));
+    }
+
+    public static void toJSConst(Schema schema, Appendable out, SelectionCache cache, Executor executor) throws IOException {
+        renderOperations(schema, out, executor, (builder, op) -> jsConst(builder, schema, op, cache, null, PrintOptions.DEFAULT));
+    }
+
+    public static String toJSConst(Schema schema, PrintOptions options) {
+        return render(out -> toJSConst(schema, out, options, null));
+    }
+
+    /**
+     * Renders with the given options. With a fragment threshold, the selection set of every type or
+     * union selected by at least that many operations is emitted once as a fragment constant ahead
+     * of the operations, which spread it and interpolate the fragment definitions they need.
+     */
+    public static void toJSConst(Schema schema, Appendable out, PrintOptions options, Executor executor) throws IOException {
+        val cache = new SelectionCache();
+        val fragments = fragmentsOf(schema, options);
+        if (fragments != null) {
+            val builder = new StringBuilder();
+            for (int typeId : fragments.all()) {
+                builder.setLength(0);
+                jsFragment(builder, schema, typeId, cache, fragments, options);
+                out.append(builder).append("\n");
+            }
+        }
+        renderOperations(schema, out, executor,
+                (builder, op) -> jsConst(builder, schema, op, cache, fragments, options));
+    }
+
+    /**
+     * The GraphQL document of every operation by operation name, exactly as the string its
+     * {@link #toJSConst(Schema, Appendable, PrintOptions, Executor) constant} evaluates to with the
+     * same options, including the definitions of the fragments it uses.
+     */
+    public static Map<String, String> toDocuments(Schema schema, PrintOptions options) {
+        Metrics.Span span = Metrics.start(Metrics.Phase.RENDER);
+        val cache = new SelectionCache();
+        val fragments = fragmentsOf(schema, options);
+        val fragmentTexts = new HashMap<Integer, String>();
+        val documents = new LinkedHashMap<String, String>();
+        val builder = new StringBuilder();
+        schema.allOperations().forEach(op -> {
+            builder.setLength(0);
+            operationText(builder, schema, op, cache, fragments, options);
+            if (fragments != null) {
+                for (int typeId : fragments.usedBy(op)) {
+                    String text = fragmentTexts.computeIfAbsent(typeId, id -> {
+                        val fragment = new StringBuilder();
+                        fragmentText(fragment, schema, id, cache, fragments, options);
+                        return fragment.toString();
+                    });
+                    if (options.isMinify()) builder.append(text);
+                    else builder.append(INDENT).append(text).append("\n");
+                }
+            }
+            documents.put(op.getName(), builder.toString());
         });
+        Metrics.stop(span);
+        return documents;
+    }
 
+    /**
+     * The helpers the functions of {@code schema} call, which must come before them in the same file:
+     * {@code cachedGQL} if any operation has a {@code @cache} directive, otherwise nothing.
+     */
+    public static String jsFuncPreamble(Schema schema) {
+        return jsFuncPreamble(schema, PrintOptions.DEFAULT);
+    }
+
+    /** Like {@link #jsFuncPreamble(Schema)}, adding the batching and persisted query transports the options ask for. */
+    public static String jsFuncPreamble(Schema schema, PrintOptions options) {
+        val builder = new StringBuilder();
+        if (schema.allOperations().anyMatch(op -> op.getCache() != null)) builder.append(CACHED_GQL).append("\n");
+        if (options.isBatching()) {
+            builder.append(String.format(BATCH_GQL, options.getBatchWindowMillis(), options.getBatchMaxSize())).append("\n");
+        }
+        if (options.isPersistedQueries()) builder.append(String.format(SEND_PERSISTED_GQL, transport(options))).append("\n");
         return builder.toString();
     }
 
-    public static String toJSFunc(Schema schema) {
-        return schema.allOperations().map(op -> {
-            val allVariables = schema.allVariablesForOper(op.getName());
-            return String.format("const %s = %s => sendGQL({\n" +
-                            INDENT + "query: %s,\n" +
-                            "%s%s" +
-                            "\n});\n",
-                    op.getName(),
-                    jsParamList(op, op.getArgs()),
-                    fromBigCamel_TO_ALL_CAPITAL(op.getName()),
-                    varContent(op.getArgs()),
-                    optionAuth(op)
-                    );
-        }).collect(Collectors.joining("\n"));
+    /**
+     * Renders the function of a single operation. Functions of cached operations call
+     * {@code cachedGQL}, so the file must start with {@link #jsFuncPreamble} of the schema.
+     */
+    public static String toJSFunc(Operation op) {
+        val builder = new StringBuilder();
+        jsFunc(builder, op);
+        return builder.toString();
     }
 
-    public static String toJSConst(Schema schema) {
-        return schema.allOperations()
-                .map(op -> String.format("const %s = `\n" +
-                                INDENT + "%s %s%s {\n" +
-                                DINDENT + "%s%s%s" +
-                                INDENT + "}\n" +
-                                "`;\n",
-                        fromBigCamel_TO_ALL_CAPITAL(op.getName()),
-                        op.getOperType(),
-                        capitalize(op.getName()),
-                        paramList(schema.allVariablesForOper(op.getName())),
-                        op.getName(),
-                        argList(op.getArgs()),
-                        retContent(op.getStrippedRetType(), schema, DINDENT)
-                )).collect(Collectors.joining("\n"));
+    /**
+     * Renders the function of a single operation with the given options, which may not extract
+     * fragments since those are shared between operations. Renders the same text as
+     * {@link #toJSFunc(Schema, Appendable, PrintOptions, Executor)} for this operation, and needs
+     * {@link #jsFuncPreamble(Schema, PrintOptions)} with the same options ahead of it.
+     */
+    public static String toJSFunc(Schema schema, Operation op, SelectionCache cache, PrintOptions options) {
+        requireNoFragments(options);
+        val builder = new StringBuilder();
+        if (!options.isPersistedQueries()) {
+            jsFunc(builder, op, transport(options), null);
+            return builder.toString();
+        }
+        operationText(builder, schema, op, cache, null, options);
+        String hash = PersistedQueries.sha256(builder.toString());
+        builder.setLength(0);
+        jsFunc(builder, op, "sendPersistedGQL", hash);
+        return builder.toString();
+    }
+
+    public static String toJSConst(Schema schema, Operation op, SelectionCache cache) {
+        return toJSConst(schema, op, cache, PrintOptions.DEFAULT);
     }
 
-    private static String paramList(Map<String, String> params) {
-        return argList(params, entry -> "$" + entry.getKey() + ": " + entry.getValue());
+    /** Renders the constant of a single operation; like {@link #toJSFunc(Schema, Operation, SelectionCache, PrintOptions)} without fragments. */
+    public static String toJSConst(Schema schema, Operation op, SelectionCache cache, PrintOptions options) {
+        requireNoFragments(options);
+        val builder = new StringBuilder();
+        jsConst(builder, schema, op, cache, null, options);
+        return builder.toString();
     }
 
-    private static String argList(Map<String, String> args) {
-        return argList(args, entry -> entry.getKey() + ": $" + entry.getKey());
+    private static void requireNoFragments(PrintOptions options) {
+        if (options.getFragmentThreshold() != 0) {
+            throw new RuntimeException("fragments are shared between operations and cannot be rendered for a single one");
+        }
     }
 
-    private static String retContent(String retType, Schema schema, String indent) {
-        if (Type.isScalar(retType)) return "\n";
+    /**
+     * Renders every operation, separated by blank lines, in declaration order. Without an executor
+     * operations are rendered one by one into a reused buffer; with one they are rendered
+     * concurrently and written out in order as they complete, producing identical output.
+     */
+    private static void renderOperations(Schema schema, Appendable out, Executor executor,
+                                         BiConsumer<StringBuilder, Operation> renderer) throws IOException {
+        val operations = schema.allOperations().collect(Collectors.toList());
+        if (executor == null) {
+            val builder = new StringBuilder();
+            for (int i = 0; i < operations.size(); i++) {
+                builder.setLength(0);
+                if (i != 0) builder.append("\n");
+                render(renderer, builder, operations.get(i));
+                out.append(builder);
+            }
+            return;
+        }
+
+        val rendered = new ArrayList<CompletableFuture<String>>(operations.size());
+        operations.forEach(op -> rendered.add(CompletableFuture.supplyAsync(() -> {
+            val builder = new StringBuilder();
+            render(renderer, builder, op);
+            return builder.toString();
+        }, executor)));
+        for (int i = 0; i < rendered.size(); i++) {
+            if (i != 0) out.append("\n");
+            try {
+                out.append(rendered.get(i).join());
+            } catch (CompletionException e) {
+                rendered.forEach(future -> future.cancel(false));
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw e;
+            }
+        }
+    }
+
+    private static void render(BiConsumer<StringBuilder, Operation> renderer, StringBuilder builder, Operation op) {
+        Metrics.Span span = Metrics.start(Metrics.Phase.RENDER);
+        try {
+            renderer.accept(builder, op);
+        } finally {
+            Metrics.stop(span);
+        }
+        Metrics.count(Metrics.Counter.OPERATIONS, 1);
+    }
+
+    private static void jsFunc(StringBuilder builder, Operation op) {
+        jsFunc(builder, op, "sendGQL", null);
+    }
+
+    private static void jsFunc(StringBuilder builder, Operation op, String send, String persistedHash) {
+        builder.append("const ").append(op.getName()).append(" = ");
+        jsParamList(builder, op).append(" => ");
+        CachePolicy cache = op.getCache();
+        if (cache != null) {
+            builder.append("cachedGQL(\"").append(op.getName()).append("\", ").append(cache.getTtlSeconds())
+                    .append(", ").append(cache.getMaxEntries()).append(", ");
+            cacheKey(builder, op, cache).append(", () => ");
+        }
+        builder.append(send).append("({\n");
+        builder.append(INDENT).append("query: ");
+        fromBigCamel_TO_ALL_CAPITAL(builder, op.getName()).append(",\n");
+        varContent(builder, op.getArgs());
+        optionAuth(builder, op);
+        builder.append("\n}");
+        if (persistedHash != null) builder.append(", \"").append(persistedHash).append("\"");
+        if (cache != null) builder.append(")");
+        builder.append(");\n");
+    }
+
+    /** The variables, preceded by the auth token if responses are cached per user. */
+    private static StringBuilder cacheKey(StringBuilder builder, Operation op, CachePolicy cache) {
+        builder.append("[");
+        boolean first = true;
+        if (cache.getScope() == CachePolicy.Scope.USER) {
+            builder.append("auth");
+            first = false;
+        }
+        for (String name : op.getArgs().keySet()) {
+            if (name.equals("auth") && cache.getScope() == CachePolicy.Scope.USER) continue;
+            if (!first) builder.append(", ");
+            builder.append(name);
+            first = false;
+        }
+        return builder.append("]");
+    }
+
+    private static Fragments fragmentsOf(Schema schema, PrintOptions options) {
+        return options.getFragmentThreshold() == 0 ? null : Fragments.of(schema, options.getFragmentThreshold());
+    }
+
+    private static void jsConst(StringBuilder builder, Schema schema, Operation op, SelectionCache cache,
+                                Fragments fragments, PrintOptions options) {
+        builder.append("const ");
+        fromBigCamel_TO_ALL_CAPITAL(builder, op.getName()).append(" = `");
+        operationText(builder, schema, op, cache, fragments, options);
+        if (fragments != null) {
+            for (int typeId : fragments.usedBy(op)) {
+                if (!options.isMinify()) builder.append(INDENT);
+                fragmentConst(builder.append("${"), fragments, typeId).append("}");
+                if (!options.isMinify()) builder.append("\n");
+            }
+        }
+        builder.append("`;\n");
+    }
+
+    private static void jsFragment(StringBuilder builder, Schema schema, int typeId, SelectionCache cache,
+                                   Fragments fragments, PrintOptions options) {
+        fragmentConst(builder.append("const "), fragments, typeId).append(" = `");
+        fragmentText(builder, schema, typeId, cache, fragments, options);
+        builder.append("`;\n");
+    }
+
+    private static void operationText(StringBuilder builder, Schema schema, Operation op, SelectionCache cache,
+                                      Fragments fragments, PrintOptions options) {
+        int start = builder.length();
+        builder.append("\n").append(INDENT).append(op.getOperType()).append(" ");
+        capitalize(builder, op.getName());
+        paramList(builder, schema.allVariablesForOper(op.getName())).append(" {\n");
+        builder.append(DINDENT).append(op.getName());
+        argList(builder, op.getArgs());
+        retContent(op.getRetTypeId(), schema, 2, builder, cache, fragments, options.isUnionTypenames(), new BitSet());
+        builder.append(INDENT).append("}\n");
+        if (options.isMinify()) minify(builder, start);
+    }
+
+    private static void fragmentText(StringBuilder builder, Schema schema, int typeId, SelectionCache cache,
+                                     Fragments fragments, PrintOptions options) {
+        int start = builder.length();
+        builder.append("\n").append(INDENT).append("fragment ").append(fragments.name(typeId))
+                .append(" on ").append(schema.getSymbols().name(typeId));
+        selectionSet(typeId, schema, 1, builder, cache, fragments, options.isUnionTypenames(), new BitSet());
+        if (options.isMinify()) minify(builder, start);
+    }
+
+    /**
+     * Strips the document text from {@code start} on down to its canonical minimal form in place:
+     * whitespace and commas are dropped, except a single space between two adjacent names.
+     */
+    private static void minify(StringBuilder builder, int start) {
+        int write = start;
+        boolean separated = false;
+        for (int read = start; read < builder.length(); read++) {
+            char ch = builder.charAt(read);
+            if (ch == ' ' || ch == '\n' || ch == '\t' || ch == '\r' || ch == ',') {
+                separated = true;
+                continue;
+            }
+            if (separated && write > start && isNameChar(builder.charAt(write - 1)) && isNameChar(ch)) {
+                builder.setCharAt(write++, ' ');
+            }
+            builder.setCharAt(write++, ch);
+            separated = false;
+        }
+        builder.setLength(write);
+    }
+
+    private static boolean isNameChar(char ch) {
+        return ch == '_' || ch >= 'a' && ch <= 'z' || ch >= 'A' && ch <= 'Z' || ch >= '0' && ch <= '9';
+    }
+
+    /** Size of every operation document minified versus pretty printed, in UTF-8 bytes. */
+    public static String toMinifyReport(Schema schema, PrintOptions options) {
+        val pretty = toDocuments(schema, options.toBuilder().minify(false).build());
+        val minified = toDocuments(schema, options.toBuilder().minify(true).build());
         val builder = new StringBuilder();
+        long prettyTotal = 0;
+        long minifiedTotal = 0;
+        for (Map.Entry<String, String> entry : pretty.entrySet()) {
+            int prettyBytes = entry.getValue().getBytes(StandardCharsets.UTF_8).length;
+            int minifiedBytes = minified.get(entry.getKey()).getBytes(StandardCharsets.UTF_8).length;
+            minifyReportLine(builder, entry.getKey(), prettyBytes, minifiedBytes);
+            prettyTotal += prettyBytes;
+            minifiedTotal += minifiedBytes;
+        }
+        minifyReportLine(builder, "total", prettyTotal, minifiedTotal);
+        return builder.toString();
+    }
+
+    private static void minifyReportLine(StringBuilder builder, String name, long prettyBytes, long minifiedBytes) {
+        builder.append(String.format("%s: %d -> %d bytes, saved %d (%.1f%%)%n", name, prettyBytes, minifiedBytes,
+                prettyBytes - minifiedBytes, prettyBytes == 0 ? 0.0 : 100.0 * (prettyBytes - minifiedBytes) / prettyBytes));
+    }
+
+    private static StringBuilder fragmentConst(StringBuilder builder, Fragments fragments, int typeId) {
+        return fromBigCamel_TO_ALL_CAPITAL(builder.append("FRAGMENT"), fragments.name(typeId));
+    }
+
+    private static StringBuilder paramList(StringBuilder builder, Map<String, TypeRef> params) {
+        if (params.isEmpty()) return builder;
+        builder.append("(");
+        boolean first = true;
+        for (Map.Entry<String, TypeRef> entry : params.entrySet()) {
+            if (!first) builder.append(", ");
+            builder.append("$").append(entry.getKey()).append(": ").append(entry.getValue().getText());
+            first = false;
+        }
+        return builder.append(")");
+    }
+
+    private static StringBuilder argList(StringBuilder builder, Map<String, TypeRef> args) {
+        if (args.isEmpty()) return builder;
+        builder.append("(");
+        boolean first = true;
+        for (String name : args.keySet()) {
+            if (!first) builder.append(", ");
+            builder.append(name).append(": $").append(name);
+            first = false;
+        }
+        return builder.append(")");
+    }
+
+    /** Scalars and enums are leaves and have no selection set. */
+    private static boolean isLeaf(Schema schema, int typeId) {
+        Symbols.Kind kind = schema.kindOf(typeId);
+        return kind == Symbols.Kind.SCALAR || kind == Symbols.Kind.ENUM;
+    }
+
+    private static void retContent(int typeId, Schema schema, int depth, StringBuilder builder,
+                                   SelectionCache cache, Fragments fragments, boolean typenames,
+                                   BitSet rendering) {
+        if (isLeaf(schema, typeId)) {
+            builder.append("\n");
+            return;
+        }
+        if (fragments != null && fragments.contains(typeId)) {
+            builder.append(" {\n");
+            indent(builder, depth + 1).append("...").append(fragments.name(typeId)).append("\n");
+            indent(builder, depth).append("}\n");
+            return;
+        }
+        String cached = cache.get(typeId, depth);
+        if (cached != null) {
+            builder.append(cached);
+            return;
+        }
+        selectionSet(typeId, schema, depth, builder, cache, fragments, typenames, rendering);
+    }
+
+    private static void selectionSet(int typeId, Schema schema, int depth, StringBuilder builder,
+                                     SelectionCache cache, Fragments fragments, boolean typenames,
+                                     BitSet rendering) {
+        if (rendering.get(typeId)) {
+            throw new RuntimeException("type: " + schema.getSymbols().name(typeId) + " selects itself, its selection set would be infinite");
+        }
+        rendering.set(typeId);
+
+        int start = builder.length();
+        int nodes = 0;
         builder.append(" {\n");
-        schema.findUnion(retType).ifPresent(union -> {
-            union.getSubTypes().forEach(subType -> {
-                builder.append(indent).append(INDENT).append("... on ").append(subType);
-                builder.append(retContent(subType, schema, indent + INDENT));
-            });
-        });
+        Union union = schema.unionById(typeId);
+        if (union != null) {
+            if (typenames) {
+                indent(builder, depth + 1).append("__typename\n");
+                nodes++;
+            }
+            nodes += union.getSubTypes().size();
+            for (int i = 0; i < union.getSubTypes().size(); i++) {
+                int subTypeId = union.getSubTypeId(i);
+                if (fragments != null && fragments.contains(subTypeId)) {
+                    indent(builder, depth + 1).append("...").append(fragments.name(subTypeId)).append("\n");
+                    continue;
+                }
+                indent(builder, depth + 1).append("... on ").append(union.getSubTypes().get(i));
+                retContent(subTypeId, schema, depth + 1, builder, cache, fragments, typenames, rendering);
+            }
+        }
 
-        schema.findType(retType).ifPresent(type -> {
-            type.getFieldTypeMap().forEach(gqlDef -> {
-                builder.append(indent).append(INDENT).append(gqlDef.getDefName());
-                if (Type.isScalar(gqlDef.getStrippedRetName())) {
+        Type type = schema.typeById(typeId);
+        if (type != null) {
+            nodes += type.getFieldTypeMap().size();
+            for (GqlDef gqlDef : type.getFieldTypeMap()) {
+                indent(builder, depth + 1).append(gqlDef.getDefName());
+                if (isLeaf(schema, gqlDef.getRetTypeId())) {
                     builder.append("\n");
                 } else {
-                    builder.append(retContArgList(gqlDef));
-                    builder.append(retContent(gqlDef.getStrippedRetName(), schema, indent + INDENT));
+                    argList(builder, gqlDef.getParams());
+                    retContent(gqlDef.getRetTypeId(), schema, depth + 1, builder, cache, fragments, typenames, rendering);
                 }
-            });
-        });
-        builder.append(indent).append("}\n");
-        return builder.toString();
+            }
+        }
+        indent(builder, depth).append("}\n");
+
+        rendering.clear(typeId);
+        cache.put(typeId, depth, builder.substring(start));
+        Metrics.count(Metrics.Counter.SELECTION_NODES, nodes);
     }
 
-    private static String javaMethod(Operation operation) {
-        val argList = operation.getArgs();
-        if (operation.needAuth()) argList.put("userToken", "String");
-        val argsStr = argList.entrySet().stream()
-                .map(entry -> Util.strip(entry.getValue()) + " " + entry.getKey())
-                .collect(Collectors.joining(", "));
-
-        return String.format("public static %s %s(%s) {\n" +
-                "    return null;\n" +
-                "}\n",
-                operation.getStrippedRetType(),
-                operation.getName(),
-                argsStr
-                );
-    }
-
-    private static String javaSuperInterface(Union union) {
-        return String.format("public interface %s {}\n",
-                union.getName());
-    }
-
-    private static String javaPubStaticClass(Type type) {
-        String fields = type.getFieldTypeMap().stream()
-                .map(gqlDef -> String.format(DINDENT + "public %s %s%s;",
-                        gqlDef.getStrippedRetType(),
-                        gqlDef.getDefName(),
-                        gqlDef.getParams().entrySet().stream()
-                                .map(e -> Util.strip(e.getValue()) + " " + e.getKey())
-                                .collect(Collectors.joining(", "))
-                ))
-                .collect(Collectors.joining("\n"));
-        return String.format("public static class %s {\n" +
-                        "%s\n" +
-                        "}\n",
-                type.getName(),
-                fields);
-    }
-
-    private static String javaPlainInterface(Type type, String implUnion) {
-        String methods = type.getFieldTypeMap().stream()
-                .map(gqlDef -> String.format(DINDENT + "%s get%s(%s);",
-                        gqlDef.getStrippedRetType(),
-                        capitalize(gqlDef.getDefName()),
-                        gqlDef.getParams().entrySet().stream()
-                                .map(e -> Util.strip(e.getValue()) + " " + e.getKey())
-                                .collect(Collectors.joining(", "))
-                ))
-                .collect(Collectors.joining("\n"));
-        return String.format("public interface %s %s {\n" +
-                "%s\n" +
-                "}\n",
-                type.getName(),
-                implUnion == null ? "" : "extends " + implUnion,
-                methods);
-    }
-
-    private static String typeDef(Type type) {
-        return String.format("%s %s {\n" +
-                INDENT + "%s\n" +
-                "}\n",
-                type.getTypename(),
-                type.getName(),
-                type.getFieldTypeMap().stream()
-                        .map(gqlDef -> gqlDef.getDefName() + ": " + gqlDef.getRetName())
-                        .collect(Collectors.joining("\n" + INDENT)));
-    }
-
-    private static String unionDef(Union union) {
-        return String.format("union %s = %s",
-                union.getName(),
-                String.join(" | ", union.getSubTypes()));
-    }
-
-    private static String varContent(Map<String, String> variables) {
-        if (variables.entrySet().isEmpty()) return "";
-        return INDENT + "variables: {\n" +
-                variables.entrySet().stream()
-                        .map(e -> DINDENT + e.getKey() + ": " + e.getKey())
-                        .collect(Collectors.joining(",\n")) +
-                "\n" + INDENT + "}";
-    }
-
-    private static String optionAuth(Operation operation) {
-        if (!operation.needAuth()) return "";
-        if (!operation.getArgs().isEmpty()) return ",\n" + INDENT + "auth: auth";
-        return INDENT + "auth: auth";
-    }
-
-    private static String jsParamList(Operation op, Map<String, String> allVariables) {
-        if (op.needAuth()) allVariables.put("auth", "");
-        String result = "(" + String.join(", ", allVariables.keySet()) + ")";
-        allVariables.remove("auth");
-        return result;
-    }
-
-    private static String retContArgList(GqlDef gqlDef) {
-        return argList(gqlDef.getParams(), entry -> entry.getKey() + ": $" + entry.getKey());
-    }
-
-    private static String argList(Map<String, String> kvMap, Function<Map.Entry<String, String>, String> transformer) {
-        String result = kvMap.entrySet().stream()
-                .map(transformer).collect(Collectors.joining(", "));
-        if (result.isEmpty()) return "";
-        else return "(" + result + ")";
-    }
-
-    private static String capitalize(String origin) {
-        if (origin.isEmpty()) return "";
-        val builder = new StringBuilder(origin.length());
-        val iter = origin.chars().iterator();
-        char firstChar = (char)iter.next().intValue();
-        builder.append(Character.toUpperCase(firstChar));
-        iter.forEachRemaining((IntConsumer) i -> builder.append((char)i));
-        return builder.toString();
+    private static StringBuilder indent(StringBuilder builder, int depth) {
+        for (int i = 0; i < depth; i++) builder.append(INDENT);
+        return builder;
+    }
+
+    private static StringBuilder javaMethod(StringBuilder builder, Operation operation) {
+        builder.append("public static ").append(operation.getStrippedRetType()).append(" ")
+                .append(operation.getName()).append("(");
+        javaParams(builder, operation.getArgs());
+        if (operation.needAuth() && !operation.getArgs().containsKey("userToken")) {
+            if (!operation.getArgs().isEmpty()) builder.append(", ");
+            builder.append("String userToken");
+        }
+        return builder.append(") {\n")
+                .append("    return null;\n")
+                .append("}\n");
+    }
+
+    private static StringBuilder javaParams(StringBuilder builder, Map<String, TypeRef> params) {
+        boolean first = true;
+        for (Map.Entry<String, TypeRef> entry : params.entrySet()) {
+            if (!first) builder.append(", ");
+            builder.append(entry.getValue().getBase()).append(" ").append(entry.getKey());
+            first = false;
+        }
+        return builder;
+    }
+
+    /** The Java type of a type reference, with a {@code List} for every list level. */
+    private static StringBuilder javaType(StringBuilder builder, TypeRef typeRef) {
+        if (typeRef.isList()) return javaType(builder.append("List<"), typeRef.getElement()).append(">");
+        return builder.append(typeRef.getBase());
     }
 
-    private static String fromBigCamel_TO_ALL_CAPITAL(String originString) {
+    private static String loaderName(Type type, GqlDef gqlDef) {
         val builder = new StringBuilder();
-        originString.chars().forEachOrdered(ch -> {
+        builder.append(Character.toLowerCase(type.getName().charAt(0))).append(type.getName(), 1, type.getName().length());
+        return capitalize(builder, gqlDef.getDefName()).toString();
+    }
+
+    private static StringBuilder javaLoaderKeyType(StringBuilder builder, Type type, GqlDef gqlDef) {
+        if (gqlDef.getParams().isEmpty()) return builder.append(type.getName());
+        return capitalize(builder, loaderName(type, gqlDef)).append("Key");
+    }
+
+    /**
+     * The parameters of the loader method of a field by Java name: the object the field is resolved
+     * on, named {@code source} unless an argument already is, followed by the field arguments.
+     */
+    private static Map<String, TypeRef> loaderParams(Schema schema, Type type, GqlDef gqlDef) {
+        val arguments = new LinkedHashMap<String, TypeRef>();
+        gqlDef.getParams().forEach((name, typeRef) -> {
+            String javaName = JavaClientPrinter.javaName(name);
+            if (arguments.putIfAbsent(javaName, typeRef) != null) {
+                throw new RuntimeException("field " + type.getName() + "." + gqlDef.getDefName()
+                        + " has two arguments that both become Java parameter " + javaName);
+            }
+        });
+        String source = "source";
+        while (arguments.containsKey(source)) source += "_";
+        val params = new LinkedHashMap<String, TypeRef>();
+        params.put(source, schema.getSymbols().typeRef(type.getName()));
+        params.putAll(arguments);
+        return params;
+    }
+
+    private static StringBuilder javaLoaderParams(StringBuilder builder, Map<String, TypeRef> params) {
+        boolean first = true;
+        for (Map.Entry<String, TypeRef> entry : params.entrySet()) {
+            if (!first) builder.append(", ");
+            javaType(builder, entry.getValue()).append(" ").append(entry.getKey());
+            first = false;
+        }
+        return builder;
+    }
+
+    /** A key of the source object and the arguments, so equal requests share one load. */
+    private static StringBuilder javaLoaderKey(StringBuilder builder, Type type, GqlDef gqlDef, Map<String, TypeRef> fields) {
+        String keyType = javaLoaderKeyType(new StringBuilder(), type, gqlDef).toString();
+        builder.append(INDENT).append("public static final class ").append(keyType).append(" {\n");
+        fields.forEach((name, typeRef) ->
+                javaType(builder.append(DINDENT).append("public final "), typeRef).append(" ").append(name).append(";\n"));
+        builder.append("\n").append(DINDENT).append("public ").append(keyType).append("(");
+        javaLoaderParams(builder, fields).append(") {\n");
+        fields.keySet().forEach(name ->
+                builder.append(DINDENT).append(INDENT).append("this.").append(name).append(" = ").append(name).append(";\n"));
+        builder.append(DINDENT).append("}\n\n")
+                .append(DINDENT).append("@Override\n")
+                .append(DINDENT).append("public boolean equals(Object o) {\n")
+                .append(DINDENT).append(INDENT).append("if (!(o instanceof ").append(keyType).append(")) return false;\n")
+                .append(DINDENT).append(INDENT).append(keyType).append(" other = (").append(keyType).append(") o;\n")
+                .append(DINDENT).append(INDENT).append("return ");
+        boolean first = true;
+        for (String name : fields.keySet()) {
+            if (!first) builder.append("\n").append(DINDENT).append(DINDENT).append("&& ");
+            builder.append("Objects.equals(").append(name).append(", other.").append(name).append(")");
+            first = false;
+        }
+        builder.append(";\n").append(DINDENT).append("}\n\n")
+                .append(DINDENT).append("@Override\n")
+                .append(DINDENT).append("public int hashCode() {\n")
+                .append(DINDENT).append(INDENT).append("return Objects.hash(")
+                .append(String.join(", ", fields.keySet())).append(");\n")
+                .append(DINDENT).append("}\n");
+        return builder.append(INDENT).append("}\n");
+    }
+
+    private static StringBuilder javaSuperInterface(StringBuilder builder, Union union) {
+        return builder.append("public interface ").append(union.getName()).append(" {}\n");
+    }
+
+    private static StringBuilder javaPubStaticClass(StringBuilder builder, Type type) {
+        builder.append("public static class ").append(type.getName()).append(" {\n");
+        boolean first = true;
+        for (GqlDef gqlDef : type.getFieldTypeMap()) {
+            if (!first) builder.append("\n");
+            builder.append(DINDENT).append("public ").append(gqlDef.getStrippedRetType()).append(" ")
+                    .append(gqlDef.getDefName());
+            javaParams(builder, gqlDef.getParams()).append(";");
+            first = false;
+        }
+        return builder.append("\n}\n");
+    }
+
+    private static StringBuilder javaPlainInterface(StringBuilder builder, Type type, String implUnion) {
+        builder.append("public interface ").append(type.getName()).append(" ");
+        if (implUnion != null) builder.append("extends ").append(implUnion);
+        builder.append(" {\n");
+        boolean first = true;
+        for (GqlDef gqlDef : type.getFieldTypeMap()) {
+            if (!first) builder.append("\n");
+            builder.append(DINDENT).append(gqlDef.getStrippedRetType()).append(" get");
+            capitalize(builder, gqlDef.getDefName()).append("(");
+            javaParams(builder, gqlDef.getParams()).append(");");
+            first = false;
+        }
+        return builder.append("\n}\n");
+    }
+
+    private static StringBuilder typeDef(StringBuilder builder, Type type) {
+        builder.append(type.getTypename()).append(" ").append(type.getName()).append(" {\n");
+        for (GqlDef gqlDef : type.getFieldTypeMap()) {
+            builder.append(INDENT).append(gqlDef.getDefName()).append(": ").append(gqlDef.getRetType().getText()).append("\n");
+        }
+        if (type.getFieldTypeMap().isEmpty()) builder.append(INDENT).append("\n");
+        return builder.append("}\n");
+    }
+
+    private static StringBuilder unionDef(StringBuilder builder, Union union) {
+        builder.append("union ").append(union.getName()).append(" = ");
+        boolean first = true;
+        for (String subType : union.getSubTypes()) {
+            if (!first) builder.append(" | ");
+            builder.append(subType);
+            first = false;
+        }
+        return builder;
+    }
+
+    private static void varContent(StringBuilder builder, Map<String, TypeRef> variables) {
+        if (variables.isEmpty()) return;
+        builder.append(INDENT).append("variables: {\n");
+        boolean first = true;
+        for (String name : variables.keySet()) {
+            if (!first) builder.append(",\n");
+            builder.append(DINDENT).append(name).append(": ").append(name);
+            first = false;
+        }
+        builder.append("\n").append(INDENT).append("}");
+    }
+
+    private static void optionAuth(StringBuilder builder, Operation operation) {
+        if (!operation.needAuth()) return;
+        if (!operation.getArgs().isEmpty()) builder.append(",\n");
+        builder.append(INDENT).append("auth: auth");
+    }
+
+    private static StringBuilder jsParamList(StringBuilder builder, Operation op) {
+        builder.append("(");
+        boolean first = true;
+        for (String name : op.getArgs().keySet()) {
+            if (!first) builder.append(", ");
+            builder.append(name);
+            first = false;
+        }
+        if (op.needAuth() && !op.getArgs().containsKey("auth")) {
+            if (!first) builder.append(", ");
+            builder.append("auth");
+        }
+        return builder.append(")");
+    }
+
+    static StringBuilder capitalize(StringBuilder builder, String origin) {
+        if (origin.isEmpty()) return builder;
+        builder.append(Character.toUpperCase(origin.charAt(0)));
+        return builder.append(origin, 1, origin.length());
+    }
+
+    private static StringBuilder fromBigCamel_TO_ALL_CAPITAL(StringBuilder builder, String originString) {
+        for (int i = 0; i < originString.length(); i++) {
+            char ch = originString.charAt(i);
             if (Character.isUpperCase(ch)) {
-                builder.append("_").append((char)ch);
+                builder.append("_").append(ch);
             } else {
-                builder.append(Character.toUpperCase((char)ch));
+                builder.append(Character.toUpperCase(ch));
             }
-        });
-        return builder.toString();
+        }
+        return builder;
     }
 
     public static void main(String[] args) {
-        System.out.println(fromBigCamel_TO_ALL_CAPITAL("allStringAndTest"));
-        System.out.println(capitalize("tasdfsadfet"));
+        System.out.println(fromBigCamel_TO_ALL_CAPITAL(new StringBuilder(), "allStringAndTest"));
+        System.out.println(capitalize(new StringBuilder(), "tasdfsadfet"));
 
-        val qry = new Query("tst", "TestType!", new HashMap<String, String>(){{
-            put("username", "String!");
-            put("password", "String2!");
+        val symbols = new Symbols();
+        val qry = new Query("tst", symbols.typeRef("TestType!"), new HashMap<String, TypeRef>(){{
+            put("username", symbols.typeRef("String!"));
+            put("password", symbols.typeRef("String2!"));
         }}, false);
 
-        System.out.println(paramList(qry.getArgs()));
-        System.out.println(argList(qry.getArgs()));
+        System.out.println(paramList(new StringBuilder(), qry.getArgs()));
+        System.out.println(argList(new StringBuilder(), qry.getArgs()));
     }
 }
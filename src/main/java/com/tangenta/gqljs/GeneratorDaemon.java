@@ -0,0 +1,237 @@
+package com.tangenta.gqljs;
+
+import lombok.val;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Keeps the generator resident so repeated builds skip JVM startup. Requests are read one per line,
+ * and every request is answered with exactly one line starting with {@code ok} or {@code error}:
+ *
+ * <pre>
+ * const &lt;schema&gt; &lt;output&gt; [options]    JS query constants, options as on the command line
+ * func &lt;schema&gt; &lt;output&gt; [options]     JS request functions
+ * manifest &lt;schema&gt; &lt;output&gt; [options] persisted query manifest
+ * loaders &lt;schema&gt; &lt;output&gt;             Java batch loaders, named after the output file
+ * client &lt;schema&gt; &lt;output&gt; [options]   Java client, named after the output file
+ * dsl &lt;schema&gt; &lt;operation&gt; &lt;output&gt;    schema excerpt of one operation
+ * java &lt;schema&gt; &lt;operation&gt; &lt;output&gt;   Java stub of one operation
+ * evict &lt;schema&gt;
+ * metrics                              JSON report of {@link Metrics}, collected once started with --metrics
+ * quit
+ * </pre>
+ *
+ * Words are separated by spaces or tabs. A word containing either is written in double quotes, in
+ * which {@code \"} and {@code \\} stand for a quote and a backslash, e.g.
+ * {@code const "My Schemas/api.gql" out.js}.
+ *
+ * <p>A schema is a file, a directory or a glob, see {@link Application#loadSchema}. Parsed schemas
+ * are kept between requests and reused while the content of their files is unchanged; only the
+ * {@value #MAX_SCHEMAS} most recently used are kept.
+ */
+public class GeneratorDaemon {
+    static final int MAX_SCHEMAS = 16;
+
+    private final BufferedReader in;
+    private final PrintStream out;
+    private final Map<String, CachedSchema> schemas = new LinkedHashMap<String, CachedSchema>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedSchema> eldest) {
+            return size() > MAX_SCHEMAS;
+        }
+    };
+    /** Whether the current request's schema was "cached" or "loaded", null if it needed none. */
+    private String schemaSource;
+    private PrintOptions options;
+
+    private static class CachedSchema {
+        final byte[] fingerprint;
+        final Schema schema;
+
+        CachedSchema(byte[] fingerprint, Schema schema) {
+            this.fingerprint = fingerprint;
+            this.schema = schema;
+        }
+    }
+
+    public GeneratorDaemon(InputStream in, PrintStream out) {
+        this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        this.out = out;
+    }
+
+    public void run() throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            long start = System.nanoTime();
+            schemaSource = null;
+            String result;
+            try {
+                val words = words(line);
+                if (words.isEmpty()) continue;
+                if (words.get(0).equals("quit")) break;
+                options = Application.parseOptions(words);
+                result = handle(words.toArray(new String[0]));
+            } catch (IOException | RuntimeException e) {
+                out.println("error " + String.valueOf(e.getMessage()).replace('\n', ';'));
+                out.flush();
+                continue;
+            }
+            out.printf("ok %s in %.1f ms%s%n", result, (System.nanoTime() - start) / 1e6,
+                    schemaSource == null ? "" : " (schema " + schemaSource + ")");
+            out.flush();
+        }
+    }
+
+    private String handle(String[] request) throws IOException {
+        switch (request[0]) {
+            case "const":
+                expectArgs(request, 2);
+                Application.printJSConst(schema(request[1]), request[2], options, ForkJoinPool.commonPool());
+                return request[2];
+            case "func":
+                expectArgs(request, 2);
+                Application.printJSFunc(schema(request[1]), request[2], options, ForkJoinPool.commonPool());
+                return request[2];
+            case "manifest":
+                expectArgs(request, 2);
+                Application.printManifest(schema(request[1]), request[2], options);
+                return request[2];
+            case "loaders":
+                expectArgs(request, 2);
+                Application.printJavaLoaders(schema(request[1]), request[2]);
+                return request[2];
+            case "client":
+                expectArgs(request, 2);
+                Application.printJavaClient(schema(request[1]), request[2], options);
+                return request[2];
+            case "dsl":
+                expectArgs(request, 3);
+                try (Writer writer = Application.openWriter(request[3])) {
+                    GQLPrinter.toDSL(schema(request[1]), request[2], writer);
+                }
+                return request[3];
+            case "java":
+                expectArgs(request, 3);
+                try (Writer writer = Application.openWriter(request[3])) {
+                    GQLPrinter.toJavaImpl(schema(request[1]), request[2], writer);
+                }
+                return request[3];
+            case "evict":
+                expectArgs(request, 1);
+                schemas.remove(key(request[1]));
+                return "evicted " + request[1];
+            case "metrics":
+                expectArgs(request, 0);
+                return Metrics.report();
+            default:
+                throw new RuntimeException("unknown request: " + request[0]);
+        }
+    }
+
+    /** Splits a request into words, see the class comment for quoting. */
+    static List<String> words(String line) {
+        val words = new ArrayList<String>();
+        val word = new StringBuilder();
+        int i = 0;
+        while (i < line.length()) {
+            char ch = line.charAt(i);
+            if (ch == ' ' || ch == '\t') {
+                i++;
+                continue;
+            }
+            word.setLength(0);
+            if (ch == '"') {
+                int open = i++;
+                while (true) {
+                    if (i == line.length()) throw new RuntimeException("unterminated quote at column " + (open + 1));
+                    ch = line.charAt(i++);
+                    if (ch == '"') break;
+                    if (ch == '\\' && i < line.length() && (line.charAt(i) == '"' || line.charAt(i) == '\\')) ch = line.charAt(i++);
+                    word.append(ch);
+                }
+                if (i < line.length() && line.charAt(i) != ' ' && line.charAt(i) != '\t') {
+                    throw new RuntimeException("expected a space after the quote at column " + i);
+                }
+            } else {
+                while (i < line.length() && line.charAt(i) != ' ' && line.charAt(i) != '\t') word.append(line.charAt(i++));
+            }
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    private static void expectArgs(String[] request, int count) {
+        if (request.length != count + 1) {
+            throw new RuntimeException(request[0] + " expects " + count + " arguments but got " + (request.length - 1));
+        }
+    }
+
+    /**
+     * The schema at {@code location}, cached under the hash of the content that was actually parsed,
+     * so a file saved while loading is picked up by the next request.
+     */
+    private Schema schema(String location) throws IOException {
+        String key = key(location);
+        CachedSchema cached = schemas.get(key);
+        byte[] fingerprint;
+        Schema schema;
+        if (SchemaLoader.isMultiFile(location)) {
+            val files = SchemaLoader.resolve(location);
+            val hashes = new ArrayList<byte[]>(files.size());
+            for (Path file : files) hashes.add(SchemaSnapshot.hash(file));
+            if (cached != null && MessageDigest.isEqual(cached.fingerprint, fingerprint(files, hashes))) {
+                schemaSource = "cached";
+                return cached.schema;
+            }
+            val result = SchemaLoader.load(files, ForkJoinPool.commonPool());
+            val parsed = new ArrayList<byte[]>(files.size());
+            result.getFiles().forEach(stats -> parsed.add(stats.getHash()));
+            fingerprint = fingerprint(files, parsed);
+            schema = result.getSchema();
+        } else {
+            Path path = Paths.get(location);
+            byte[] content = Files.readAllBytes(path);
+            fingerprint = SchemaSnapshot.hash(content);
+            if (cached != null && MessageDigest.isEqual(cached.fingerprint, fingerprint)) {
+                schemaSource = "cached";
+                return cached.schema;
+            }
+            schema = SchemaSnapshot.load(path, content, fingerprint);
+        }
+        schemas.put(key, new CachedSchema(fingerprint, schema));
+        schemaSource = "loaded";
+        return schema;
+    }
+
+    private static String key(String location) {
+        return SchemaLoader.isMultiFile(location) ? location : Paths.get(location).toAbsolutePath().normalize().toString();
+    }
+
+    /** Hash of the names and content hashes of every file a schema is loaded from. */
+    private static byte[] fingerprint(List<Path> files, List<byte[]> hashes) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (int i = 0; i < files.size(); i++) {
+            digest.update(files.get(i).toString().getBytes(StandardCharsets.UTF_8));
+            digest.update(hashes.get(i));
+        }
+        return digest.digest();
+    }
+}
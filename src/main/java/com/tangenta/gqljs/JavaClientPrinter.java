@@ -0,0 +1,830 @@
+package com.tangenta.gqljs;
+
+import com.tangenta.gqljs.schemaType.Enume;
+import com.tangenta.gqljs.schemaType.Operation;
+import com.tangenta.gqljs.schemaType.Type;
+import com.tangenta.gqljs.schemaType.Union;
+import com.tangenta.gqljs.schemaType.util.GqlDef;
+import com.tangenta.gqljs.schemaType.util.TypeRef;
+import lombok.val;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Renders a self-contained Java client: one class per operation with its document pre-encoded as
+ * UTF-8, a writer putting the variables straight into a reusable {@code JsonOutput}, and a reader
+ * decoding the response from the stream into classes generated for the selected types. Every
+ * union selection starts with {@code __typename}, which the reader switches on to pick the member.
+ */
+public class JavaClientPrinter {
+    private static final String INDENT = GQLPrinter.INDENT;
+    private static final String DINDENT = GQLPrinter.DINDENT;
+    private static final String TINDENT = DINDENT + INDENT;
+    /** Lambda parameters {@link #writeCall} declares for the elements of lists. */
+    private static final Pattern WRITE_CALL_LOCAL = Pattern.compile("(out|value)\\d+");
+    private static final Map<String, String> SCALAR_TYPES = new HashMap<>();
+    private static final Map<String, String> SCALAR_READERS = new HashMap<>();
+    private static final Map<String, String> SCALAR_WRITERS = new HashMap<>();
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
+            "continue", "default", "do", "double", "else", "enum", "extends", "final", "finally", "float",
+            "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "native",
+            "new", "package", "private", "protected", "public", "return", "short", "static", "strictfp",
+            "super", "switch", "synchronized", "this", "throw", "throws", "transient", "try", "void",
+            "volatile", "while", "true", "false", "null", "_"));
+    /** Classes the generated source refers to by simple name, which a nested class would shadow. */
+    private static final Set<String> RESERVED_CLASSES = new HashSet<>(Arrays.asList(
+            "ValueReader", "ValueWriter", "Response", "JsonOutput", "JsonReader",
+            "ArrayList", "Arrays", "Collections", "List", "IOException", "InputStream", "OutputStream",
+            "StandardCharsets", "Boolean", "Character", "Enum", "Integer", "Long", "Math", "Object", "String",
+            "StringBuilder", "System"));
+
+    static {
+        scalar("ID", "String", "nextString", "string");
+        scalar("Int", "Integer", "nextInteger", "number");
+        scalar("Long", "Long", "nextLong", "number");
+        scalar("String", "String", "nextString", "string");
+        scalar("Boolean", "Boolean", "nextBoolean", "bool");
+    }
+
+    /** The JSON writer and reader the generated classes share, nested in the generated class. */
+    private static final String RUNTIME = GQLPrinter.lines(
+            "  public interface ValueReader<T> {",
+            "    T read(JsonReader in) throws IOException;",
+            "  }",
+            "",
+            "  public interface ValueWriter<T> {",
+            "    void write(JsonOutput out, T value);",
+            "  }",
+            "",
+            "  public static final class Response<T> {",
+            "    public final T data;",
+            "    public final List<String> errors;",
+            "",
+            "    Response(T data, List<String> errors) {",
+            "      this.data = data;",
+            "      this.errors = errors;",
+            "    }",
+            "  }",
+            "",
+            "  /** A growable buffer that request bodies are appended to; reset it to reuse it for the next request. */",
+            "  public static final class JsonOutput {",
+            "    private static final byte[] NULL = utf8(\"null\");",
+            "    private static final byte[] TRUE = utf8(\"true\");",
+            "    private static final byte[] FALSE = utf8(\"false\");",
+            "    private static final String HEX = \"0123456789abcdef\";",
+            "",
+            "    private byte[] buffer = new byte[1024];",
+            "    private int size;",
+            "",
+            "    public JsonOutput reset() {",
+            "      size = 0;",
+            "      return this;",
+            "    }",
+            "",
+            "    public byte[] buffer() {",
+            "      return buffer;",
+            "    }",
+            "",
+            "    public int size() {",
+            "      return size;",
+            "    }",
+            "",
+            "    public byte[] toByteArray() {",
+            "      return Arrays.copyOf(buffer, size);",
+            "    }",
+            "",
+            "    public void writeTo(OutputStream out) throws IOException {",
+            "      out.write(buffer, 0, size);",
+            "    }",
+            "",
+            "    public void raw(byte[] bytes) {",
+            "      ensure(bytes.length);",
+            "      System.arraycopy(bytes, 0, buffer, size, bytes.length);",
+            "      size += bytes.length;",
+            "    }",
+            "",
+            "    public void nul() {",
+            "      raw(NULL);",
+            "    }",
+            "",
+            "    public void bool(Boolean value) {",
+            "      if (value == null) nul();",
+            "      else raw(value ? TRUE : FALSE);",
+            "    }",
+            "",
+            "    public void number(Integer value) {",
+            "      if (value == null) nul();",
+            "      else digits(Integer.toString(value));",
+            "    }",
+            "",
+            "    public void number(Long value) {",
+            "      if (value == null) nul();",
+            "      else digits(Long.toString(value));",
+            "    }",
+            "",
+            "    public void enumValue(Enum<?> value) {",
+            "      string(value == null ? null : value.name());",
+            "    }",
+            "",
+            "    public void string(String value) {",
+            "      if (value == null) {",
+            "        nul();",
+            "        return;",
+            "      }",
+            "      ensure(value.length() * 6 + 2);",
+            "      buffer[size++] = '\"';",
+            "      for (int i = 0; i < value.length(); i++) {",
+            "        char c = value.charAt(i);",
+            "        if (c == '\"' || c == '\\\\') {",
+            "          buffer[size++] = '\\\\';",
+            "          buffer[size++] = (byte) c;",
+            "        } else if (c < 0x20) {",
+            "          escape(c);",
+            "        } else if (c < 0x80) {",
+            "          buffer[size++] = (byte) c;",
+            "        } else if (c < 0x800) {",
+            "          buffer[size++] = (byte) (0xC0 | c >> 6);",
+            "          buffer[size++] = (byte) (0x80 | c & 0x3F);",
+            "        } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {",
+            "          int codePoint = Character.toCodePoint(c, value.charAt(++i));",
+            "          buffer[size++] = (byte) (0xF0 | codePoint >> 18);",
+            "          buffer[size++] = (byte) (0x80 | codePoint >> 12 & 0x3F);",
+            "          buffer[size++] = (byte) (0x80 | codePoint >> 6 & 0x3F);",
+            "          buffer[size++] = (byte) (0x80 | codePoint & 0x3F);",
+            "        } else if (Character.isSurrogate(c)) {",
+            "          escape(c);",
+            "        } else {",
+            "          buffer[size++] = (byte) (0xE0 | c >> 12);",
+            "          buffer[size++] = (byte) (0x80 | c >> 6 & 0x3F);",
+            "          buffer[size++] = (byte) (0x80 | c & 0x3F);",
+            "        }",
+            "      }",
+            "      buffer[size++] = '\"';",
+            "    }",
+            "",
+            "    public <T> void list(List<T> values, ValueWriter<T> writer) {",
+            "      if (values == null) {",
+            "        nul();",
+            "        return;",
+            "      }",
+            "      punctuator('[');",
+            "      for (int i = 0; i < values.size(); i++) {",
+            "        if (i != 0) punctuator(',');",
+            "        writer.write(this, values.get(i));",
+            "      }",
+            "      punctuator(']');",
+            "    }",
+            "",
+            "    public void punctuator(char c) {",
+            "      ensure(1);",
+            "      buffer[size++] = (byte) c;",
+            "    }",
+            "",
+            "    private void digits(String digits) {",
+            "      ensure(digits.length());",
+            "      for (int i = 0; i < digits.length(); i++) buffer[size++] = (byte) digits.charAt(i);",
+            "    }",
+            "",
+            "    private void escape(char c) {",
+            "      buffer[size++] = '\\\\';",
+            "      buffer[size++] = 'u';",
+            "      for (int shift = 12; shift >= 0; shift -= 4) buffer[size++] = (byte) HEX.charAt(c >> shift & 0xF);",
+            "    }",
+            "",
+            "    private void ensure(int more) {",
+            "      if (size + more > buffer.length) buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + more));",
+            "    }",
+            "  }",
+            "",
+            "  /** Reads a response one value at a time straight from the stream, without building a tree. */",
+            "  public static final class JsonReader {",
+            "    private final InputStream in;",
+            "    private final byte[] buffer = new byte[8192];",
+            "    private final StringBuilder chars = new StringBuilder();",
+            "    private long offset;",
+            "    private int position;",
+            "    private int limit;",
+            "",
+            "    public JsonReader(InputStream in) {",
+            "      this.in = in;",
+            "    }",
+            "",
+            "    /** Reads {@code {\"data\": {field: ...}, \"errors\": [...]}}, keeping only the message of every error. */",
+            "    public <T> Response<T> response(String field, ValueReader<T> reader) throws IOException {",
+            "      T data = null;",
+            "      List<String> errors = Collections.emptyList();",
+            "      beginObject();",
+            "      while (hasNext()) {",
+            "        switch (nextName()) {",
+            "          case \"data\":",
+            "            if (nextNull()) break;",
+            "            beginObject();",
+            "            while (hasNext()) {",
+            "              if (nextName().equals(field)) data = reader.read(this);",
+            "              else skipValue();",
+            "            }",
+            "            endObject();",
+            "            break;",
+            "          case \"errors\":",
+            "            List<String> messages = list(JsonReader::errorMessage);",
+            "            if (messages != null) errors = messages;",
+            "            break;",
+            "          default:",
+            "            skipValue();",
+            "        }",
+            "      }",
+            "      endObject();",
+            "      return new Response<>(data, errors);",
+            "    }",
+            "",
+            "    public void beginObject() throws IOException {",
+            "      expect('{');",
+            "    }",
+            "",
+            "    public void endObject() throws IOException {",
+            "      expect('}');",
+            "    }",
+            "",
+            "    public void beginArray() throws IOException {",
+            "      expect('[');",
+            "    }",
+            "",
+            "    public void endArray() throws IOException {",
+            "      expect(']');",
+            "    }",
+            "",
+            "    /** Begins a union member, whose selection starts with {@code __typename}, and returns its type name. */",
+            "    public String typename() throws IOException {",
+            "      beginObject();",
+            "      if (!hasNext() || !nextName().equals(\"__typename\")) throw error(\"__typename as the first field\");",
+            "      return nextString();",
+            "    }",
+            "",
+            "    /** Skips the remaining fields of the current object and ends it. */",
+            "    public void skipFields() throws IOException {",
+            "      while (hasNext()) {",
+            "        nextName();",
+            "        skipValue();",
+            "      }",
+            "      endObject();",
+            "    }",
+            "",
+            "    /** Whether the current object or array has another element, consuming the comma before it. */",
+            "    public boolean hasNext() throws IOException {",
+            "      int c = peek();",
+            "      if (c == ',') {",
+            "        position++;",
+            "        return true;",
+            "      }",
+            "      return c != '}' && c != ']' && c != -1;",
+            "    }",
+            "",
+            "    public String nextName() throws IOException {",
+            "      if (peek() != '\"') throw error(\"name\");",
+            "      String name = nextString();",
+            "      expect(':');",
+            "      return name;",
+            "    }",
+            "",
+            "    /** Consumes a null and returns true, or returns false if the next value is not null. */",
+            "    public boolean nextNull() throws IOException {",
+            "      if (peek() != 'n') return false;",
+            "      literal(\"null\");",
+            "      return true;",
+            "    }",
+            "",
+            "    public String nextString() throws IOException {",
+            "      if (nextNull()) return null;",
+            "      expect('\"');",
+            "      chars.setLength(0);",
+            "      while (true) {",
+            "        int b = read();",
+            "        if (b == '\"') return chars.toString();",
+            "        if (b == '\\\\') unescape();",
+            "        else if (b < 0x80) chars.append((char) b);",
+            "        else utf8(b);",
+            "      }",
+            "    }",
+            "",
+            "    public Integer nextInteger() throws IOException {",
+            "      Long value = nextLong();",
+            "      return value == null ? null : Math.toIntExact(value);",
+            "    }",
+            "",
+            "    public Long nextLong() throws IOException {",
+            "      if (nextNull()) return null;",
+            "      boolean negative = peek() == '-';",
+            "      if (negative) position++;",
+            "      long value = 0;",
+            "      int digits = 0;",
+            "      while (position < limit || fill()) {",
+            "        int c = buffer[position];",
+            "        if (c < '0' || c > '9') break;",
+            "        value = value * 10 + (c - '0');",
+            "        position++;",
+            "        digits++;",
+            "      }",
+            "      if (digits == 0) throw error(\"number\");",
+            "      return negative ? -value : value;",
+            "    }",
+            "",
+            "    public Boolean nextBoolean() throws IOException {",
+            "      if (nextNull()) return null;",
+            "      if (peek() == 't') {",
+            "        literal(\"true\");",
+            "        return true;",
+            "      }",
+            "      literal(\"false\");",
+            "      return false;",
+            "    }",
+            "",
+            "    public <T> List<T> list(ValueReader<T> reader) throws IOException {",
+            "      if (nextNull()) return null;",
+            "      beginArray();",
+            "      List<T> values = new ArrayList<>();",
+            "      while (hasNext()) values.add(reader.read(this));",
+            "      endArray();",
+            "      return values;",
+            "    }",
+            "",
+            "    public void skipValue() throws IOException {",
+            "      switch (peek()) {",
+            "        case '{':",
+            "          beginObject();",
+            "          skipFields();",
+            "          break;",
+            "        case '[':",
+            "          beginArray();",
+            "          while (hasNext()) skipValue();",
+            "          endArray();",
+            "          break;",
+            "        case '\"':",
+            "          nextString();",
+            "          break;",
+            "        case 't':",
+            "        case 'f':",
+            "          nextBoolean();",
+            "          break;",
+            "        case 'n':",
+            "          nextNull();",
+            "          break;",
+            "        default:",
+            "          int skipped = 0;",
+            "          while ((position < limit || fill()) && \"+-.eE0123456789\".indexOf(buffer[position]) >= 0) {",
+            "            position++;",
+            "            skipped++;",
+            "          }",
+            "          if (skipped == 0) throw error(\"value\");",
+            "      }",
+            "    }",
+            "",
+            "    public IOException error(String expected) {",
+            "      return new IOException(\"expected \" + expected + \" at byte \" + (offset + position));",
+            "    }",
+            "",
+            "    private static String errorMessage(JsonReader in) throws IOException {",
+            "      String message = null;",
+            "      in.beginObject();",
+            "      while (in.hasNext()) {",
+            "        if (in.nextName().equals(\"message\")) message = in.nextString();",
+            "        else in.skipValue();",
+            "      }",
+            "      in.endObject();",
+            "      return message;",
+            "    }",
+            "",
+            "    private void unescape() throws IOException {",
+            "      int c = read();",
+            "      switch (c) {",
+            "        case 'b': chars.append('\\b'); break;",
+            "        case 'f': chars.append('\\f'); break;",
+            "        case 'n': chars.append('\\n'); break;",
+            "        case 'r': chars.append('\\r'); break;",
+            "        case 't': chars.append('\\t'); break;",
+            "        case 'u':",
+            "          int value = 0;",
+            "          for (int i = 0; i < 4; i++) {",
+            "            int digit = Character.digit(read(), 16);",
+            "            if (digit < 0) throw error(\"hex digit\");",
+            "            value = value << 4 | digit;",
+            "          }",
+            "          chars.append((char) value);",
+            "          break;",
+            "        default: chars.append((char) c);",
+            "      }",
+            "    }",
+            "",
+            "    private void utf8(int b) throws IOException {",
+            "      int continuations = b >= 0xF0 ? 3 : b >= 0xE0 ? 2 : 1;",
+            "      int codePoint = b & 0x3F >> continuations;",
+            "      for (int i = 0; i < continuations; i++) codePoint = codePoint << 6 | read() & 0x3F;",
+            "      chars.appendCodePoint(codePoint);",
+            "    }",
+            "",
+            "    private void expect(char c) throws IOException {",
+            "      if (peek() != c) throw error(\"'\" + c + \"'\");",
+            "      position++;",
+            "    }",
+            "",
+            "    private void literal(String text) throws IOException {",
+            "      for (int i = 0; i < text.length(); i++) {",
+            "        if (read() != text.charAt(i)) throw error(text);",
+            "      }",
+            "    }",
+            "",
+            "    private int peek() throws IOException {",
+            "      while (position < limit || fill()) {",
+            "        int c = buffer[position] & 0xFF;",
+            "        if (c != ' ' && c != '\\n' && c != '\\r' && c != '\\t') return c;",
+            "        position++;",
+            "      }",
+            "      return -1;",
+            "    }",
+            "",
+            "    private int read() throws IOException {",
+            "      if (position == limit && !fill()) throw error(\"more input\");",
+            "      return buffer[position++] & 0xFF;",
+            "    }",
+            "",
+            "    private boolean fill() throws IOException {",
+            "      offset += limit;",
+            "      position = 0;",
+            "      limit = Math.max(in.read(buffer), 0);",
+            "      return limit > 0;",
+            "    }",
+            "  }",
+            "",
+            "  private static byte[] utf8(String value) {",
+            "    return value.getBytes(StandardCharsets.UTF_8);",
+            "  }");
+
+    private static void scalar(String name, String javaType, String reader, String writer) {
+        SCALAR_TYPES.put(name, javaType);
+        SCALAR_READERS.put(name, reader);
+        SCALAR_WRITERS.put(name, writer);
+    }
+
+    public static String toJavaClient(Schema schema, String className, PrintOptions options) {
+        val builder = new StringBuilder();
+        try {
+            toJavaClient(schema, className, options, builder);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Renders the client as the source of one class. Documents are rendered with the given options,
+     * so they can be minified or use fragments like the JS constants.
+     */
+    public static void toJavaClient(Schema schema, String className, PrintOptions options, Appendable out) throws IOException {
+        checkClassNames(schema, className);
+        val documents = GQLPrinter.toDocuments(schema, options.toBuilder().unionTypenames(true).build());
+        Metrics.Span span = Metrics.start(Metrics.Phase.RENDER);
+        val unionsOf = new HashMap<String, List<String>>();
+        schema.unions.values().forEach(union -> union.getSubTypes().forEach(subType ->
+                unionsOf.computeIfAbsent(subType, name -> new ArrayList<>()).add(union.getName())));
+
+        val builder = new StringBuilder();
+        builder.append("import java.io.IOException;\n")
+                .append("import java.io.InputStream;\n")
+                .append("import java.io.OutputStream;\n")
+                .append("import java.nio.charset.StandardCharsets;\n")
+                .append("import java.util.*;\n\n")
+                .append("public final class ").append(className).append(" {\n")
+                .append(RUNTIME);
+
+        for (Operation op : schema.allOperations().collect(Collectors.toList())) {
+            operation(builder.append("\n"), schema, op, documents.get(op.getName()));
+        }
+        for (Type type : schema.types.values()) {
+            builder.append("\n");
+            if (type.getTypename().equals("input")) input(builder, type);
+            else object(builder, type, unionsOf.getOrDefault(type.getName(), Collections.emptyList()));
+        }
+        for (Union union : schema.unions.values()) union(builder.append("\n"), union);
+        for (Enume enume : schema.enums.values()) enumeration(builder.append("\n"), enume);
+        builder.append("}\n");
+        Metrics.stop(span);
+        out.append(builder);
+    }
+
+    /**
+     * Every operation, type, union and enum becomes a class nested in {@code className}, so their names
+     * must differ from each other, from the enclosing class and from {@link #RESERVED_CLASSES}.
+     */
+    private static void checkClassNames(Schema schema, String className) {
+        val owners = new HashMap<String, String>();
+        owners.put(className, "the client class");
+        RESERVED_CLASSES.forEach(name -> owners.put(name, "a class the client refers to"));
+        schema.allOperations().forEach(op -> claimClassName(owners, operationClass(op), "operation " + op.getName()));
+        schema.types.keySet().forEach(name -> claimClassName(owners, name, "type " + name));
+        schema.unions.keySet().forEach(name -> claimClassName(owners, name, "union " + name));
+        schema.enums.keySet().forEach(name -> claimClassName(owners, name, "enum " + name));
+    }
+
+    private static void claimClassName(Map<String, String> owners, String name, String owner) {
+        String taken = owners.putIfAbsent(name, owner);
+        if (taken != null) {
+            throw new RuntimeException(owner + " would generate class " + name + ", which clashes with " + taken);
+        }
+    }
+
+    private static String operationClass(Operation op) {
+        return GQLPrinter.capitalize(GQLPrinter.capitalize(new StringBuilder(), op.getName()), op.getOperType()).toString();
+    }
+
+    private static void operation(StringBuilder builder, Schema schema, Operation op, String document) {
+        Map<String, TypeRef> variables = schema.allVariablesForOper(op.getName());
+        val constants = constantNames(variables.keySet());
+        val parameters = parameterNames(variables.keySet());
+        val request = new StringBuilder("{\"query\":");
+        jsonString(request, document);
+        if (!variables.isEmpty()) request.append(",\"variables\":{");
+
+        builder.append(INDENT).append("public static final class ").append(operationClass(op)).append(" {\n");
+        javaString(builder.append(DINDENT).append("public static final byte[] DOCUMENT = utf8("), document).append(");\n");
+        boolean first = true;
+        for (String name : variables.keySet()) {
+            if (first) {
+                jsonString(request, name).append(":");
+                javaString(builder.append(DINDENT).append("private static final byte[] REQUEST_START = utf8("),
+                        request.toString()).append(");\n");
+            } else {
+                builder.append(DINDENT).append("private static final byte[] VARIABLE_").append(constants.get(name)).append(" = utf8(");
+                javaString(builder, jsonString(new StringBuilder(","), name).append(":").toString()).append(");\n");
+            }
+            first = false;
+        }
+        if (variables.isEmpty()) {
+            javaString(builder.append(DINDENT).append("private static final byte[] REQUEST_START = utf8("),
+                    request.toString()).append(");\n");
+        }
+        builder.append(DINDENT).append("private static final byte[] REQUEST_END = utf8(\"")
+                .append(variables.isEmpty() ? "}" : "}}").append("\");\n\n");
+
+        builder.append(DINDENT).append("/** Appends the request body to {@code output}. */\n");
+        builder.append(DINDENT).append("public static void write(JsonOutput output");
+        variables.forEach((name, typeRef) -> javaType(builder.append(", "), typeRef).append(" ").append(parameters.get(name)));
+        builder.append(") {\n").append(TINDENT).append("output.raw(REQUEST_START);\n");
+        first = true;
+        for (Map.Entry<String, TypeRef> variable : variables.entrySet()) {
+            if (!first) {
+                builder.append(TINDENT).append("output.raw(VARIABLE_").append(constants.get(variable.getKey())).append(");\n");
+            }
+            builder.append(TINDENT);
+            writeCall(builder, variable.getValue(), "output", parameters.get(variable.getKey()), 0).append(";\n");
+            first = false;
+        }
+        builder.append(TINDENT).append("output.raw(REQUEST_END);\n")
+                .append(DINDENT).append("}\n\n");
+
+        builder.append(DINDENT).append("public static Response<");
+        javaType(builder, op.getRetType()).append("> read(InputStream in) throws IOException {\n");
+        builder.append(TINDENT).append("return new JsonReader(in).response(\"").append(op.getName()).append("\", ");
+        readerRef(builder, op.getRetType(), 0).append(");\n")
+                .append(DINDENT).append("}\n")
+                .append(INDENT).append("}\n");
+    }
+
+    private static void object(StringBuilder builder, Type type, List<String> unions) {
+        builder.append(INDENT).append("public static final class ").append(type.getName());
+        if (!unions.isEmpty()) builder.append(" implements ").append(String.join(", ", unions));
+        builder.append(" {\n");
+        fields(builder, type);
+
+        builder.append("\n").append(DINDENT).append("public static ").append(type.getName())
+                .append(" read(JsonReader in) throws IOException {\n")
+                .append(TINDENT).append("if (in.nextNull()) return null;\n")
+                .append(TINDENT).append("in.beginObject();\n")
+                .append(TINDENT).append("return new ").append(type.getName()).append("().readFields(in);\n")
+                .append(DINDENT).append("}\n\n");
+
+        builder.append(DINDENT).append(type.getName()).append(" readFields(JsonReader in) throws IOException {\n")
+                .append(TINDENT).append("while (in.hasNext()) {\n")
+                .append(TINDENT).append(INDENT).append("switch (in.nextName()) {\n");
+        for (GqlDef gqlDef : type.getFieldTypeMap()) {
+            builder.append(TINDENT).append(DINDENT).append("case \"").append(gqlDef.getDefName()).append("\": this.")
+                    .append(javaName(gqlDef.getDefName())).append(" = ");
+            readCall(builder, gqlDef.getRetType(), "in", 0).append("; break;\n");
+        }
+        builder.append(TINDENT).append(DINDENT).append("default: in.skipValue();\n")
+                .append(TINDENT).append(INDENT).append("}\n")
+                .append(TINDENT).append("}\n")
+                .append(TINDENT).append("in.endObject();\n")
+                .append(TINDENT).append("return this;\n")
+                .append(DINDENT).append("}\n")
+                .append(INDENT).append("}\n");
+    }
+
+    private static void input(StringBuilder builder, Type type) {
+        builder.append(INDENT).append("public static final class ").append(type.getName()).append(" {\n");
+        List<GqlDef> fields = type.getFieldTypeMap();
+        val constants = constantNames(fields.stream().map(GqlDef::getDefName).collect(Collectors.toList()));
+        for (int i = 0; i < fields.size(); i++) {
+            String key = jsonString(new StringBuilder(i == 0 ? "{" : ","), fields.get(i).getDefName()).append(":").toString();
+            builder.append(DINDENT).append("private static final byte[] FIELD_").append(constants.get(fields.get(i).getDefName()))
+                    .append(" = utf8(");
+            javaString(builder, key).append(");\n");
+        }
+        fields(builder.append("\n"), type);
+
+        builder.append("\n").append(DINDENT).append("public static void write(JsonOutput out, ").append(type.getName())
+                .append(" value) {\n")
+                .append(TINDENT).append("if (value == null) {\n")
+                .append(TINDENT).append(INDENT).append("out.nul();\n")
+                .append(TINDENT).append(INDENT).append("return;\n")
+                .append(TINDENT).append("}\n");
+        for (GqlDef gqlDef : fields) {
+            builder.append(TINDENT).append("out.raw(FIELD_").append(constants.get(gqlDef.getDefName())).append(");\n");
+            writeCall(builder.append(TINDENT), gqlDef.getRetType(), "out", "value." + javaName(gqlDef.getDefName()), 0)
+                    .append(";\n");
+        }
+        if (fields.isEmpty()) builder.append(TINDENT).append("out.punctuator('{');\n");
+        builder.append(TINDENT).append("out.punctuator('}');\n")
+                .append(DINDENT).append("}\n")
+                .append(INDENT).append("}\n");
+    }
+
+    private static void fields(StringBuilder builder, Type type) {
+        for (GqlDef gqlDef : type.getFieldTypeMap()) {
+            javaType(builder.append(DINDENT).append("public "), gqlDef.getRetType()).append(" ")
+                    .append(javaName(gqlDef.getDefName())).append(";\n");
+        }
+    }
+
+    /** A union member is told apart by its {@code __typename}; an unknown member reads as null. */
+    private static void union(StringBuilder builder, Union union) {
+        builder.append(INDENT).append("public interface ").append(union.getName()).append(" {\n")
+                .append(DINDENT).append("static ").append(union.getName()).append(" read(JsonReader in) throws IOException {\n")
+                .append(TINDENT).append("if (in.nextNull()) return null;\n")
+                .append(TINDENT).append("switch (in.typename()) {\n");
+        for (String subType : union.getSubTypes()) {
+            builder.append(TINDENT).append(INDENT).append("case \"").append(subType).append("\": return new ")
+                    .append(subType).append("().readFields(in);\n");
+        }
+        builder.append(TINDENT).append(INDENT).append("default:\n")
+                .append(TINDENT).append(DINDENT).append("in.skipFields();\n")
+                .append(TINDENT).append(DINDENT).append("return null;\n")
+                .append(TINDENT).append("}\n")
+                .append(DINDENT).append("}\n")
+                .append(INDENT).append("}\n");
+    }
+
+    /** Values that are Java keywords get a constant with a trailing underscore, and are mapped to it and back by name. */
+    private static void enumeration(StringBuilder builder, Enume enume) {
+        val renamed = new LinkedHashMap<String, String>();
+        val constants = new HashSet<String>();
+        for (String value : enume.getEnums()) {
+            String constant = javaName(value);
+            if (!constants.add(constant)) {
+                throw new RuntimeException("enum " + enume.getName() + " has two values that both become Java constant " + constant);
+            }
+            if (!constant.equals(value)) renamed.put(value, constant);
+        }
+
+        builder.append(INDENT).append("public enum ").append(enume.getName()).append(" {\n")
+                .append(DINDENT).append(enume.getEnums().stream().map(JavaClientPrinter::javaName).collect(Collectors.joining(", ")))
+                .append(";\n\n")
+                .append(DINDENT).append("public static ").append(enume.getName()).append(" read(JsonReader in) throws IOException {\n")
+                .append(TINDENT).append("String value = in.nextString();\n");
+        if (renamed.isEmpty()) {
+            builder.append(TINDENT).append("return value == null ? null : valueOf(value);\n");
+        } else {
+            builder.append(TINDENT).append("if (value == null) return null;\n")
+                    .append(TINDENT).append("switch (value) {\n");
+            renamed.forEach((value, constant) -> builder.append(TINDENT).append(INDENT).append("case \"").append(value)
+                    .append("\": return ").append(constant).append(";\n"));
+            builder.append(TINDENT).append(INDENT).append("default: return valueOf(value);\n")
+                    .append(TINDENT).append("}\n");
+        }
+        builder.append(DINDENT).append("}\n\n")
+                .append(DINDENT).append("public static void write(JsonOutput out, ").append(enume.getName()).append(" value) {\n");
+        boolean first = true;
+        for (Map.Entry<String, String> entry : renamed.entrySet()) {
+            builder.append(TINDENT).append(first ? "" : "else ").append("if (value == ").append(entry.getValue())
+                    .append(") out.string(\"").append(entry.getKey()).append("\");\n");
+            first = false;
+        }
+        builder.append(TINDENT).append(first ? "" : "else ").append("out.enumValue(value);\n")
+                .append(DINDENT).append("}\n")
+                .append(INDENT).append("}\n");
+    }
+
+
+    private static StringBuilder javaType(StringBuilder builder, TypeRef typeRef) {
+        if (typeRef.isList()) return javaType(builder.append("List<"), typeRef.getElement()).append(">");
+        return builder.append(SCALAR_TYPES.getOrDefault(typeRef.getBase(), typeRef.getBase()));
+    }
+
+    /** An expression reading a value of {@code typeRef} from the reader named {@code in}. */
+    private static StringBuilder readCall(StringBuilder builder, TypeRef typeRef, String in, int depth) {
+        if (typeRef.isList()) return readerRef(builder.append(in).append(".list("), typeRef.getElement(), depth).append(")");
+        String base = typeRef.getBase();
+        if (SCALAR_READERS.containsKey(base)) return builder.append(in).append(".").append(SCALAR_READERS.get(base)).append("()");
+        return builder.append(base).append(".read(").append(in).append(")");
+    }
+
+    private static StringBuilder readerRef(StringBuilder builder, TypeRef typeRef, int depth) {
+        if (typeRef.isList()) {
+            String in = "in" + depth;
+            return readCall(builder.append(in).append(" -> "), typeRef, in, depth + 1);
+        }
+        String base = typeRef.getBase();
+        if (SCALAR_READERS.containsKey(base)) return builder.append("JsonReader::").append(SCALAR_READERS.get(base));
+        return builder.append(base).append("::read");
+    }
+
+    /** A statement writing {@code value} of {@code typeRef} to the output named {@code out}. */
+    private static StringBuilder writeCall(StringBuilder builder, TypeRef typeRef, String out, String value, int depth) {
+        if (typeRef.isList()) {
+            String elementOut = "out" + depth;
+            String element = "value" + depth;
+            builder.append(out).append(".list(").append(value).append(", (").append(elementOut).append(", ")
+                    .append(element).append(") -> ");
+            return writeCall(builder, typeRef.getElement(), elementOut, element, depth + 1).append(")");
+        }
+        String base = typeRef.getBase();
+        if (SCALAR_WRITERS.containsKey(base)) {
+            return builder.append(out).append(".").append(SCALAR_WRITERS.get(base)).append("(").append(value).append(")");
+        }
+        return builder.append(base).append(".write(").append(out).append(", ").append(value).append(")");
+    }
+
+    /** {@code name} as a Java identifier, with a trailing underscore if it is a keyword. */
+    static String javaName(String name) {
+        return KEYWORDS.contains(name) ? name + "_" : name;
+    }
+
+    /**
+     * The Java parameter of each variable in the write method of an operation, with underscores
+     * appended where it would be a keyword, the output buffer, a lambda parameter of
+     * {@link #writeCall} or the parameter of another variable.
+     */
+    private static Map<String, String> parameterNames(Collection<String> variables) {
+        val parameters = new HashMap<String, String>();
+        val taken = new HashSet<String>(Collections.singleton("output"));
+        for (String variable : variables) {
+            String parameter = javaName(variable);
+            while (WRITE_CALL_LOCAL.matcher(parameter).matches() || !taken.add(parameter)) parameter += "_";
+            parameters.put(variable, parameter);
+        }
+        return parameters;
+    }
+
+    /**
+     * The constant suffix of each name within one class. Names that differ only in case style, like
+     * userId and user_id, would share one, so later ones are numbered.
+     */
+    private static Map<String, String> constantNames(Collection<String> names) {
+        val constants = new HashMap<String, String>();
+        val taken = new HashSet<String>();
+        for (String name : names) {
+            String base = constantName(new StringBuilder(), name).toString();
+            String constant = base;
+            for (int i = 2; !taken.add(constant); i++) constant = base + "_" + i;
+            constants.put(name, constant);
+        }
+        return constants;
+    }
+
+    private static StringBuilder constantName(StringBuilder builder, String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char ch = name.charAt(i);
+            if (Character.isUpperCase(ch) && i != 0) builder.append('_');
+            builder.append(Character.toUpperCase(ch));
+        }
+        return builder;
+    }
+
+    private static StringBuilder jsonString(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '"' || ch == '\\') builder.append('\\').append(ch);
+            else if (ch == '\n') builder.append("\\n");
+            else if (ch < 0x20) builder.append(String.format("\\u%04x", (int) ch));
+            else builder.append(ch);
+        }
+        return builder.append('"');
+    }
+
+    /** A Java string literal of {@code value}, keeping the generated source ASCII. */
+    private static StringBuilder javaString(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '"' || ch == '\\') builder.append('\\').append(ch);
+            else if (ch == '\n') builder.append("\\n");
+            else if (ch < 0x20 || ch > 0x7E) builder.append(String.format("\\u%04x", (int) ch));
+            else builder.append(ch);
+        }
+        return builder.append('"');
+    }
+}
@@ -0,0 +1,213 @@
+package com.tangenta.gqljs;
+
+import lombok.val;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide time, allocation and counters of the generator phases, collected only after
+ * {@link #enable()} so that normal runs pay a single volatile read per hook. Time and allocated
+ * bytes are summed over all threads, so phases run in parallel may add up to more than the wall
+ * time of the run. Tokenizing happens lazily while parsing and is therefore also part of the parse
+ * time; its allocations are not measured separately.
+ *
+ * <p>Phases are also reported to every {@link Listener} found by {@link ServiceLoader} when metrics
+ * are enabled. The {@code jfr} module provides one that commits them as Flight Recorder events.
+ */
+public final class Metrics {
+    public enum Phase {TOKENIZE, PARSE, VALIDATE, VARIABLES, RENDER}
+
+    public enum Counter {
+        TOKENS, DEFINITIONS, OPERATIONS, SELECTION_NODES, BYTES_WRITTEN,
+        SELECTION_CACHE_HITS, SELECTION_CACHE_MISSES, SNAPSHOT_HITS, SNAPSHOT_MISSES
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final LongAdder[] calls = adders(PHASES.length);
+    private static final LongAdder[] nanos = adders(PHASES.length);
+    private static final LongAdder[] allocated = adders(PHASES.length);
+    private static final LongAdder[] counts = adders(COUNTERS.length);
+    private static volatile boolean enabled;
+    private static volatile Listener[] listeners = new Listener[0];
+
+    /** Receives every timed phase; implementations are registered as services. */
+    public interface Listener {
+        /** Called on the thread starting {@code phase}; the result is passed back to {@link #end}. */
+        Object begin(Phase phase);
+
+        /** {@code allocatedBytes} is -1 if unknown. */
+        void end(Object started, long allocatedBytes);
+    }
+
+    /** A phase in progress on the current thread, see {@link #start}. */
+    public static final class Span {
+        private final Phase phase;
+        private final long startNanos;
+        private final long startBytes;
+        private final Object[] started;
+
+        private Span(Phase phase, long startNanos, long startBytes, Object[] started) {
+            this.phase = phase;
+            this.startNanos = startNanos;
+            this.startBytes = startBytes;
+            this.started = started;
+        }
+    }
+
+    private Metrics() {
+    }
+
+    public static synchronized void enable() {
+        if (enabled) return;
+        listeners = loadListeners();
+        enabled = true;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void reset() {
+        for (int i = 0; i < PHASES.length; i++) {
+            calls[i].reset();
+            nanos[i].reset();
+            allocated[i].reset();
+        }
+        for (LongAdder count : counts) count.reset();
+    }
+
+    /** Starts timing {@code phase}, or returns null if metrics are disabled. */
+    public static Span start(Phase phase) {
+        if (!enabled) return null;
+        Listener[] listeners = Metrics.listeners;
+        Object[] started = null;
+        if (listeners.length > 0) {
+            started = new Object[listeners.length];
+            for (int i = 0; i < listeners.length; i++) started[i] = listeners[i].begin(phase);
+        }
+        return new Span(phase, System.nanoTime(), allocatedBytes(), started);
+    }
+
+    /** Ends a span returned by {@link #start} on the same thread; does nothing for null. */
+    public static void stop(Span span) {
+        if (span == null) return;
+        long elapsed = System.nanoTime() - span.startNanos;
+        long endBytes = allocatedBytes();
+        long bytes = span.startBytes < 0 || endBytes < 0 ? -1 : endBytes - span.startBytes;
+        int phase = span.phase.ordinal();
+        calls[phase].increment();
+        nanos[phase].add(elapsed);
+        if (bytes >= 0) allocated[phase].add(bytes);
+        if (span.started != null) {
+            Listener[] listeners = Metrics.listeners;
+            for (int i = 0; i < span.started.length; i++) listeners[i].end(span.started[i], bytes);
+        }
+    }
+
+    /** Records one token scanned in {@code elapsed} nanoseconds; too fine-grained for a span. */
+    static void tokenScanned(long elapsed) {
+        int phase = Phase.TOKENIZE.ordinal();
+        calls[phase].increment();
+        nanos[phase].add(elapsed);
+        counts[Counter.TOKENS.ordinal()].increment();
+    }
+
+    public static void count(Counter counter, long amount) {
+        if (enabled) counts[counter.ordinal()].add(amount);
+    }
+
+    public static long get(Counter counter) {
+        return counts[counter.ordinal()].sum();
+    }
+
+    /**
+     * Everything collected so far as a single line of JSON. {@code allocatedBytes} is null where it
+     * was not measured.
+     */
+    public static String report() {
+        val builder = new StringBuilder();
+        builder.append("{\"enabled\":").append(enabled).append(",\"phases\":{");
+        for (Phase phase : PHASES) {
+            int i = phase.ordinal();
+            if (i != 0) builder.append(",");
+            builder.append("\"").append(camelCase(phase.name())).append("\":{\"calls\":").append(calls[i].sum())
+                    .append(",\"millis\":").append(String.format(Locale.ROOT, "%.3f", nanos[i].sum() / 1e6))
+                    .append(",\"allocatedBytes\":")
+                    .append(phase == Phase.TOKENIZE || Allocation.THREADS == null ? "null" : String.valueOf(allocated[i].sum()))
+                    .append("}");
+        }
+        builder.append("},\"counters\":{");
+        for (Counter counter : COUNTERS) {
+            if (counter.ordinal() != 0) builder.append(",");
+            builder.append("\"").append(camelCase(counter.name())).append("\":").append(get(counter));
+        }
+        return builder.append("}}").toString();
+    }
+
+    private static long allocatedBytes() {
+        return Allocation.THREADS == null ? -1 : Allocation.THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** Loaded on first use, so the management beans are only set up once metrics are collected. */
+    private static class Allocation {
+        static final com.sun.management.ThreadMXBean THREADS = threads();
+
+        private static com.sun.management.ThreadMXBean threads() {
+            try {
+                java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+                if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+                com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+                if (!threads.isThreadAllocatedMemorySupported()) return null;
+                if (!threads.isThreadAllocatedMemoryEnabled()) threads.setThreadAllocatedMemoryEnabled(true);
+                return threads;
+            } catch (LinkageError | UnsupportedOperationException | SecurityException e) {
+                return null;
+            }
+        }
+    }
+
+    /** Skips listeners that cannot be loaded, e.g. ones compiled for a newer JDK. */
+    private static Listener[] loadListeners() {
+        List<Listener> found = new ArrayList<>();
+        val iterator = ServiceLoader.load(Listener.class, Metrics.class.getClassLoader()).iterator();
+        try {
+            while (iterator.hasNext()) {
+                try {
+                    found.add(iterator.next());
+                } catch (ServiceConfigurationError | LinkageError e) {
+                    // try the next one
+                }
+            }
+        } catch (ServiceConfigurationError e) {
+            // keep the ones found so far
+        }
+        return found.toArray(new Listener[0]);
+    }
+
+    private static LongAdder[] adders(int length) {
+        val adders = new LongAdder[length];
+        for (int i = 0; i < length; i++) adders[i] = new LongAdder();
+        return adders;
+    }
+
+    private static String camelCase(String constant) {
+        val builder = new StringBuilder(constant.length());
+        boolean upper = false;
+        for (char ch : constant.toCharArray()) {
+            if (ch == '_') {
+                upper = true;
+            } else {
+                builder.append(upper ? ch : Character.toLowerCase(ch));
+                upper = false;
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,207 @@
+package com.tangenta.gqljs;
+
+import com.tangenta.gqljs.schemaType.util.Symbols;
+import lombok.val;
+
+import java.util.*;
+
+/**
+ * A schema together with its source text and the span of every top-level definition, so a new
+ * version of the text can be parsed by re-parsing only the definitions around the changed region.
+ */
+public class ParsedSchema {
+    private static final int REBUILD_SLACK = 256;
+
+    private final String source;
+    private final List<Definition> definitions;
+    private final Schema schema;
+    private final Set<String> changedOperations;
+    private final Set<String> changedTypes;
+
+    private ParsedSchema(String source, List<Definition> definitions, Symbols symbols, Schema previous,
+                         Set<String> changedOperations, Set<String> changedTypes) {
+        this.source = source;
+        this.definitions = Collections.unmodifiableList(definitions);
+        this.changedOperations = Collections.unmodifiableSet(changedOperations);
+        this.changedTypes = Collections.unmodifiableSet(changedTypes);
+        val builder = Schema.getBuilder(symbols);
+        definitions.forEach(definition -> definition.appendTo(builder));
+        this.schema = builder.build(previous);
+    }
+
+    public static ParsedSchema parse(String source) {
+        val definitions = new ArrayList<Definition>();
+        val scanner = new Scanner(source);
+        Metrics.Span span = Metrics.start(Metrics.Phase.PARSE);
+        try {
+            while (scanner.hasNext()) {
+                definitions.add(SchemaParser.definition(scanner));
+            }
+        } finally {
+            Metrics.stop(span);
+        }
+        val operations = new LinkedHashSet<String>();
+        val types = new LinkedHashSet<String>();
+        definitions.forEach(definition -> (definition.isOperation() ? operations : types).add(definition.getName()));
+        return new ParsedSchema(source, definitions, scanner.symbols(), null, operations, types);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public List<Definition> getDefinitions() {
+        return definitions;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /** Operations added, removed or edited relative to the version this one was updated from. */
+    public Set<String> getChangedOperations() {
+        return changedOperations;
+    }
+
+    /** Types, inputs, unions and enums added, removed or edited relative to the previous version. */
+    public Set<String> getChangedTypes() {
+        return changedTypes;
+    }
+
+    /**
+     * Parses a new version of the source. Definitions entirely before the edited region, and those
+     * after it once parsing has re-synchronized on an unchanged definition start, are reused with
+     * their spans shifted; only the definitions in between are parsed again. Re-parsed definitions
+     * whose text did not change keep their previous parsed value, and only changed definitions are
+     * validated again.
+     */
+    public ParsedSchema update(String newSource) {
+        int oldLength = source.length();
+        int newLength = newSource.length();
+        int shorter = Math.min(oldLength, newLength);
+        int prefix = 0;
+        while (prefix < shorter && source.charAt(prefix) == newSource.charAt(prefix)) prefix++;
+        int suffix = 0;
+        while (suffix < shorter - prefix
+                && source.charAt(oldLength - 1 - suffix) == newSource.charAt(newLength - 1 - suffix)) suffix++;
+        return update(newSource, prefix, newLength - suffix);
+    }
+
+    /**
+     * Applies a text edit replacing {@code removedLength} characters at {@code offset} with
+     * {@code inserted}, like {@link #update(String)} but without comparing the whole old and new
+     * source to find the changed region. The result shares every definition object outside the
+     * re-parsed region, and every re-parsed one whose text is unchanged, with this version.
+     *
+     * <p>Only the comparison is saved: copying the source, shifting the spans of the definitions
+     * after the edit and building the new schema still take time linear in the size of the schema.
+     */
+    public ParsedSchema edit(int offset, int removedLength, String inserted) {
+        if (offset < 0 || removedLength < 0 || offset + removedLength > source.length()) {
+            throw new IndexOutOfBoundsException("edit of " + removedLength + " characters at " + offset
+                    + " outside source of length " + source.length());
+        }
+        String newSource = new StringBuilder(source.length() - removedLength + inserted.length())
+                .append(source, 0, offset)
+                .append(inserted)
+                .append(source, offset + removedLength, source.length())
+                .toString();
+        return update(newSource, offset, offset + inserted.length());
+    }
+
+    /**
+     * Re-parses {@code newSource}, which differs from the current source only in [changeStart, newChangeEnd).
+     * Versions share the symbol table of the first one, which keeps every name ever interned, so once
+     * it has grown well beyond the names in use the whole source is parsed again with a fresh table.
+     */
+    private ParsedSchema update(String newSource, int changeStart, int newChangeEnd) {
+        int delta = newSource.length() - source.length();
+        int defined = schema.types.size() + schema.unions.size() + schema.enums.size() + Symbols.SCALAR_COUNT;
+        boolean rebuild = schema.getSymbols().count() > 2 * defined + REBUILD_SLACK;
+
+        // A definition starting before the edit may still be extended by it, e.g. a union gaining
+        // a member, so parsing restarts at the last definition that starts before the edit.
+        int first = firstIndexStartingAtOrAfter(changeStart) - 1;
+        Scanner scanner;
+        if (rebuild) {
+            first = 0;
+            newChangeEnd = newSource.length();
+            scanner = new Scanner(newSource, new Symbols());
+        } else if (first < 0) {
+            first = 0;
+            scanner = new Scanner(newSource, schema.getSymbols());
+        } else {
+            val restart = definitions.get(first);
+            scanner = new Scanner(newSource, restart.getStart(), restart.getLine(), restart.getColumn(), schema.getSymbols());
+        }
+
+        val reparsed = new ArrayList<Definition>();
+        int resume = definitions.size();
+        int lineDelta = 0;
+        int columnDelta = 0;
+        Metrics.Span span = Metrics.start(Metrics.Phase.PARSE);
+        try {
+            while (scanner.hasNext()) {
+                int start = scanner.offset();
+                if (start >= newChangeEnd) {
+                    int candidate = firstIndexStartingAtOrAfter(start - delta);
+                    if (candidate < definitions.size() && definitions.get(candidate).getStart() == start - delta) {
+                        resume = candidate;
+                        lineDelta = scanner.line() - definitions.get(candidate).getLine();
+                        columnDelta = scanner.column() - definitions.get(candidate).getColumn();
+                        break;
+                    }
+                }
+                reparsed.add(SchemaParser.definition(scanner));
+            }
+        } finally {
+            Metrics.stop(span);
+        }
+
+        val previousByKey = new HashMap<String, Definition>();
+        definitions.subList(first, resume).forEach(definition -> previousByKey.put(key(definition), definition));
+        val changedOperations = new LinkedHashSet<String>();
+        val changedTypes = new LinkedHashSet<String>();
+        val result = new ArrayList<Definition>(definitions.size() + reparsed.size() - (resume - first));
+        result.addAll(definitions.subList(0, first));
+        for (Definition definition : reparsed) {
+            val previous = previousByKey.remove(key(definition));
+            if (previous != null && sameText(previous, newSource, definition)) {
+                result.add(rebuild ? definition : definition.withValue(previous.getValue()));
+            } else {
+                result.add(definition);
+                (definition.isOperation() ? changedOperations : changedTypes).add(definition.getName());
+            }
+        }
+        previousByKey.values().forEach(removed ->
+                (removed.isOperation() ? changedOperations : changedTypes).add(removed.getName()));
+        if (resume < definitions.size()) {
+            int resumeLine = definitions.get(resume).getLine();
+            for (Definition definition : definitions.subList(resume, definitions.size())) {
+                result.add(definition.moved(delta, lineDelta, definition.getLine() == resumeLine ? columnDelta : 0));
+            }
+        }
+        return new ParsedSchema(newSource, result, scanner.symbols(), schema, changedOperations, changedTypes);
+    }
+
+    private int firstIndexStartingAtOrAfter(int offset) {
+        int low = 0;
+        int high = definitions.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (definitions.get(mid).getStart() < offset) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private static String key(Definition definition) {
+        return (definition.isOperation() ? "operation " : "type ") + definition.getName();
+    }
+
+    private boolean sameText(Definition previous, String newSource, Definition definition) {
+        int length = previous.getEnd() - previous.getStart();
+        return length == definition.getEnd() - definition.getStart()
+                && source.regionMatches(previous.getStart(), newSource, definition.getStart(), length);
+    }
+}
@@ -0,0 +1,67 @@
+package com.tangenta.gqljs;
+
+import lombok.val;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Manifest of persisted queries for the server to preload: a JSON object mapping the lowercase hex
+ * SHA-256 of every operation document to the document, in operation order.
+ */
+public class PersistedQueries {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    public static Map<String, String> manifest(Schema schema, PrintOptions options) {
+        val manifest = new LinkedHashMap<String, String>();
+        GQLPrinter.toDocuments(schema, options).values().forEach(document -> manifest.put(sha256(document), document));
+        return manifest;
+    }
+
+    public static void writeManifest(Map<String, String> manifest, Appendable out) throws IOException {
+        out.append("{");
+        boolean first = true;
+        for (Map.Entry<String, String> entry : manifest.entrySet()) {
+            out.append(first ? "\n  " : ",\n  ");
+            jsonString(entry.getKey(), out);
+            out.append(": ");
+            jsonString(entry.getValue(), out);
+            first = false;
+        }
+        out.append(first ? "}\n" : "\n}\n");
+    }
+
+    public static String sha256(String document) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(document.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        val hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) hex.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+        return hex.toString();
+    }
+
+    private static void jsonString(String value, Appendable out) throws IOException {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            switch (ch) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (ch < 0x20) out.append(String.format("\\u%04x", (int) ch));
+                    else out.append(ch);
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,26 @@
+package com.tangenta.gqljs;
+
+import lombok.Value;
+
+/** Line and column of a definition in the schema source, both starting at 1, and the file it came from if known. */
+@Value
+public class Position {
+    String file;
+    int line;
+    int column;
+
+    public Position(String file, int line, int column) {
+        this.file = file;
+        this.line = line;
+        this.column = column;
+    }
+
+    public Position(int line, int column) {
+        this(null, line, column);
+    }
+
+    @Override
+    public String toString() {
+        return file == null ? line + ":" + column : file + ":" + line + ":" + column;
+    }
+}
@@ -0,0 +1,128 @@
+package com.tangenta.gqljs;
+
+/**
+ * Settings for a generation run. The defaults render every operation's selection set inline,
+ * exactly as the plain {@link GQLPrinter} methods do.
+ */
+public class PrintOptions {
+    public static final PrintOptions DEFAULT = getBuilder().build();
+
+    private final int fragmentThreshold;
+    private final boolean persistedQueries;
+    private final boolean minify;
+    private final boolean unionTypenames;
+    private final boolean batching;
+    private final int batchWindowMillis;
+    private final int batchMaxSize;
+
+    private PrintOptions(PrintOptionsBuilder builder) {
+        this.fragmentThreshold = builder.fragmentThreshold;
+        this.persistedQueries = builder.persistedQueries;
+        this.minify = builder.minify;
+        this.unionTypenames = builder.unionTypenames;
+        this.batching = builder.batching;
+        this.batchWindowMillis = builder.batchWindowMillis;
+        this.batchMaxSize = builder.batchMaxSize;
+    }
+
+    /** Minimum number of operations selecting a type before it becomes a named fragment; 0 disables fragments. */
+    public int getFragmentThreshold() {
+        return fragmentThreshold;
+    }
+
+    /** Whether JS functions send the hash of their document instead of the document itself. */
+    public boolean isPersistedQueries() {
+        return persistedQueries;
+    }
+
+    /** Whether query documents are emitted without any whitespace the grammar does not require. */
+    public boolean isMinify() {
+        return minify;
+    }
+
+    /** Whether every union selection starts with {@code __typename}, so a response tells which member it is. */
+    public boolean isUnionTypenames() {
+        return unionTypenames;
+    }
+
+    /** Whether JS functions send through a transport that coalesces concurrent calls into batches. */
+    public boolean isBatching() {
+        return batching;
+    }
+
+    /** How long the generated transport collects calls before sending them; 0 sends at the end of the tick. */
+    public int getBatchWindowMillis() {
+        return batchWindowMillis;
+    }
+
+    public int getBatchMaxSize() {
+        return batchMaxSize;
+    }
+
+    public PrintOptionsBuilder toBuilder() {
+        return getBuilder()
+                .fragmentThreshold(fragmentThreshold)
+                .persistedQueries(persistedQueries)
+                .minify(minify)
+                .unionTypenames(unionTypenames)
+                .batching(batching)
+                .batchWindowMillis(batchWindowMillis)
+                .batchMaxSize(batchMaxSize);
+    }
+
+    public static class PrintOptionsBuilder {
+        private int fragmentThreshold;
+        private boolean persistedQueries;
+        private boolean minify;
+        private boolean unionTypenames;
+        private boolean batching;
+        private int batchWindowMillis = 0;
+        private int batchMaxSize = 10;
+
+        public PrintOptionsBuilder fragmentThreshold(int fragmentThreshold) {
+            if (fragmentThreshold < 0) throw new RuntimeException("fragment threshold must not be negative");
+            this.fragmentThreshold = fragmentThreshold;
+            return this;
+        }
+
+        public PrintOptionsBuilder persistedQueries(boolean persistedQueries) {
+            this.persistedQueries = persistedQueries;
+            return this;
+        }
+
+        public PrintOptionsBuilder minify(boolean minify) {
+            this.minify = minify;
+            return this;
+        }
+
+        public PrintOptionsBuilder unionTypenames(boolean unionTypenames) {
+            this.unionTypenames = unionTypenames;
+            return this;
+        }
+
+        public PrintOptionsBuilder batching(boolean batching) {
+            this.batching = batching;
+            return this;
+        }
+
+        public PrintOptionsBuilder batchWindowMillis(int batchWindowMillis) {
+            if (batchWindowMillis < 0) throw new RuntimeException("batch window must not be negative");
+            this.batchWindowMillis = batchWindowMillis;
+            return this;
+        }
+
+        public PrintOptionsBuilder batchMaxSize(int batchMaxSize) {
+            if (batchMaxSize < 1) throw new RuntimeException("batch size must be positive");
+            this.batchMaxSize = batchMaxSize;
+            return this;
+        }
+
+        public PrintOptions build() {
+            return new PrintOptions(this);
+        }
+    }
+
+    public static PrintOptionsBuilder getBuilder() {
+        return new PrintOptionsBuilder();
+    }
+}
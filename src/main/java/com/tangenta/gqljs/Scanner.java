@@ -1,76 +1,343 @@
 package com.tangenta.gqljs;
 
+import com.tangenta.gqljs.schemaType.util.Symbols;
+import com.tangenta.gqljs.schemaType.util.TypeRef;
 import lombok.val;
 
-import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
 import java.util.NoSuchElementException;
-import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Lexer over a {@link CharSequence} or a byte channel. Tokens are produced one at a time on demand
+ * and are described by their kind and an offset/length slice of the source, so scanning never copies
+ * characters; only {@link #next()} materializes a token as a {@link String}.
+ *
+ * <p>A channel is decoded incrementally into a small window that only has to hold the token being
+ * scanned, so memory use does not grow with the size of the input.
+ */
 public class Scanner {
-    private final String[] store;
-    private int index;
+    public enum Kind { KEYWORD, NAME, PUNCTUATOR, TYPE_REF }
 
-    public Scanner(String src) {
-        store = tokenize(src).toArray(new String[0]);
-        index = 0;
+    public enum Keyword {
+        QUERY("@query"), AUTH_QUERY("+@query"),
+        MUTATION("@mutation"), AUTH_MUTATION("+@mutation"),
+        TYPE("type"), INPUT("input"), UNION("union"), ENUM("enum"),
+        CACHE("@cache");
+
+        private final String text;
+
+        Keyword(String text) {
+            this.text = text;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    private static final Keyword[] KEYWORDS = Keyword.values();
+    private static final String PUNCTUATORS = ",():|={}";
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final Symbols symbols;
+    private final ReadableByteChannel channel;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer bytes;
+    private boolean endOfBytes;
+    private boolean endOfChars;
+    private CharBuffer window;
+    private int base;
+
+    private int pos;
+    private int line = 1;
+    private int column = 1;
+
+    private boolean scanned;
+    private Kind kind;
+    private Keyword keyword;
+    private int offset;
+    private int length;
+    private int tokenLine;
+    private int tokenColumn;
+    private int previousEnd;
+
+    public Scanner(CharSequence source) {
+        this(source, new Symbols());
+    }
+
+    /** Scans {@code source}, interning type names and references in {@code symbols}. */
+    public Scanner(CharSequence source, Symbols symbols) {
+        this.symbols = symbols;
+        this.channel = null;
+        this.decoder = null;
+        this.bytes = null;
+        this.window = CharBuffer.wrap(source);
+    }
+
+    /** Scans {@code source} from {@code start}, which is known to be at the given line and column. */
+    public Scanner(CharSequence source, int start, int line, int column, Symbols symbols) {
+        this(source, symbols);
+        this.pos = start;
+        this.line = line;
+        this.column = column;
+    }
+
+    public Scanner(ReadableByteChannel channel, Charset charset) {
+        this(channel, charset, new Symbols());
+    }
+
+    public Scanner(ReadableByteChannel channel, Charset charset, Symbols symbols) {
+        this.symbols = symbols;
+        this.channel = channel;
+        this.decoder = charset.newDecoder();
+        this.bytes = ByteBuffer.allocate(CHUNK_SIZE);
+        this.bytes.flip();
+        this.window = CharBuffer.allocate(CHUNK_SIZE);
+        this.window.flip();
     }
 
     public boolean hasNext() {
-        return index < store.length;
+        ensureScanned();
+        return kind != null;
     }
 
     public String next() {
         val result = peek();
-        index++;
+        advance();
         return result;
     }
 
     public String peek() {
-        if (index < store.length) {
-            return store[index];
-        } else {
-            throw new NoSuchElementException();
+        requireToken();
+        return window.subSequence(offset - base, offset - base + length).toString();
+    }
+
+    public void advance() {
+        requireToken();
+        previousEnd = offset + length;
+        scanned = false;
+    }
+
+    /** The offset just past the last consumed token. */
+    public int previousEnd() {
+        return previousEnd;
+    }
+
+    public Kind kind() {
+        requireToken();
+        return kind;
+    }
+
+    /** The keyword of the current token, or null if it is not a keyword. */
+    public Keyword keyword() {
+        requireToken();
+        return keyword;
+    }
+
+    public int offset() {
+        requireToken();
+        return offset;
+    }
+
+    public int length() {
+        requireToken();
+        return length;
+    }
+
+    public int line() {
+        requireToken();
+        return tokenLine;
+    }
+
+    public int column() {
+        requireToken();
+        return tokenColumn;
+    }
+
+    public boolean peekIs(char punctuator) {
+        return hasNext() && kind == Kind.PUNCTUATOR && charAt(offset) == punctuator;
+    }
+
+    public void expect(char punctuator) {
+        if (!peekIs(punctuator)) throw error("'" + punctuator + "'");
+        advance();
+    }
+
+    public void expect(Keyword expected) {
+        if (!hasNext() || keyword != expected) throw error("'" + expected.getText() + "'");
+        advance();
+    }
+
+    /** Consumes a name. Keywords are contextual, so a field may be called "type" or "input". */
+    public String nextName() {
+        if (!hasNext() || (kind != Kind.NAME && kind != Kind.KEYWORD)) throw error("name");
+        return next();
+    }
+
+    /** Consumes a type reference such as {@code [Item!]!}. Like names, types may be called "Input" or "Type". */
+    public TypeRef nextTypeRef() {
+        if (!hasNext() || kind == Kind.PUNCTUATOR) throw error("type");
+        TypeRef ref;
+        try {
+            ref = symbols.typeRef(peek());
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException(error("type").getMessage() + ": " + e.getMessage(), e);
         }
+        advance();
+        return ref;
     }
 
-    private static String SPLITTERS = ",():|={}#";
+    public Symbols symbols() {
+        return symbols;
+    }
 
-    private static List<String> tokenize(String source) {
-        val tokens = new LinkedList<String>();
-        val collector = new StringBuilder();
-        val isInsideComment = new AtomicBoolean(false);
-        source.chars().mapToObj(c -> (char) c).forEachOrdered(ch -> {
-            if (ch.equals('\n')) isInsideComment.set(false);
-            if (isInsideComment.get()) return;
-            if (isComment(ch)) {
-                isInsideComment.set(true);
-                return;
-            }
+    public RuntimeException error(String expected) {
+        if (!hasNext()) return new RuntimeException("expected " + expected + " but reached end of input");
+        return new RuntimeException("expected " + expected + " but found \"" + peek() + "\" at " +
+                tokenLine + ":" + tokenColumn);
+    }
 
-            if (Character.isWhitespace(ch)) {
-                tryFlush(tokens, collector);
-            } else if (SPLITTERS.indexOf(ch) != -1) {
-                tryFlush(tokens, collector);
-                tokens.add(ch.toString());
-            } else {
-                collector.append(ch);
+    private void requireToken() {
+        if (!hasNext()) throw new NoSuchElementException();
+    }
+
+    private void ensureScanned() {
+        if (scanned) return;
+        scanned = true;
+        if (!Metrics.isEnabled()) {
+            scan();
+            return;
+        }
+        long start = System.nanoTime();
+        scan();
+        if (kind != null) Metrics.tokenScanned(System.nanoTime() - start);
+    }
+
+    private void scan() {
+        kind = null;
+        keyword = null;
+        if (!skipIgnored()) return;
+
+        tokenLine = line;
+        tokenColumn = column;
+        char ch = charAt(pos);
+        if (PUNCTUATORS.indexOf(ch) != -1) {
+            consume(ch);
+            kind = Kind.PUNCTUATOR;
+        } else {
+            boolean typeRef = false;
+            while (available(pos)) {
+                ch = charAt(pos);
+                if (Character.isWhitespace(ch) || ch == '#' || PUNCTUATORS.indexOf(ch) != -1) break;
+                typeRef |= ch == '[' || ch == ']' || ch == '!';
+                consume(ch);
             }
-        });
-        tryFlush(tokens, collector);
-        return tokens;
+            keyword = typeRef ? null : matchKeyword();
+            kind = typeRef ? Kind.TYPE_REF : keyword != null ? Kind.KEYWORD : Kind.NAME;
+        }
+        length = pos - offset;
+    }
+
+    private boolean skipIgnored() {
+        boolean insideComment = false;
+        while (true) {
+            offset = pos;
+            if (!available(pos)) return false;
+            char ch = charAt(pos);
+            if (ch == '\n') insideComment = false;
+            else if (ch == '#') insideComment = true;
+            else if (!insideComment && !Character.isWhitespace(ch) && !isByteOrderMark(ch)) return true;
+            consume(ch);
+        }
+    }
+
+    private boolean isByteOrderMark(char ch) {
+        return ch == '\uFEFF' && pos == 0;
+    }
+
+    private void consume(char ch) {
+        pos++;
+        if (ch == '\n') {
+            line++;
+            column = 1;
+        } else {
+            column++;
+        }
+    }
+
+    private Keyword matchKeyword() {
+        int len = pos - offset;
+        for (Keyword candidate : KEYWORDS) {
+            if (regionMatchesIgnoreCase(candidate.getText(), len)) return candidate;
+        }
+        return null;
     }
 
-    private static void tryFlush(List<String> result, StringBuilder buffer) {
-        if (buffer.length() != 0) {
-            result.add(buffer.toString());
-            buffer.delete(0, buffer.length());
+    private boolean regionMatchesIgnoreCase(String text, int len) {
+        if (text.length() != len) return false;
+        for (int i = 0; i < len; i++) {
+            if (Character.toLowerCase(charAt(offset + i)) != text.charAt(i)) return false;
         }
+        return true;
     }
 
-    private static boolean isComment(Character x) {
-        return x.equals('#');
+    private char charAt(int index) {
+        return window.get(index - base);
+    }
+
+    private boolean available(int index) {
+        while (index - base >= window.limit()) {
+            if (!fill()) return false;
+        }
+        return true;
+    }
+
+    /** Drops everything before the current token from the window and decodes more input after it. */
+    private boolean fill() {
+        if (channel == null || endOfChars) return false;
+        window.position(offset - base);
+        window.compact();
+        base = offset;
+        if (!window.hasRemaining()) growWindow();
+        int before = window.position();
+        try {
+            while (window.position() == before && !endOfChars) {
+                CoderResult result = decoder.decode(bytes, window, endOfBytes);
+                if (result.isError()) result.throwException();
+                if (result.isOverflow()) {
+                    if (window.position() > before) break;
+                    // the next character is a surrogate pair and only one slot was free
+                    growWindow();
+                    continue;
+                }
+                if (endOfBytes) {
+                    decoder.flush(window);
+                    endOfChars = true;
+                } else {
+                    bytes.compact();
+                    endOfBytes = channel.read(bytes) < 0;
+                    bytes.flip();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        window.flip();
+        return window.limit() > before;
+    }
+
+    private void growWindow() {
+        CharBuffer larger = CharBuffer.allocate(window.capacity() * 2);
+        window.flip();
+        window = larger.put(window);
     }
 
     public static void main(String[] args) {
@@ -82,7 +349,10 @@ public class Scanner {
                 "}\n" +
                 "union HotItem = SchoolHeatInfo | EntertainmentInfo | LearningResourceInfo\n";
 
-        System.out.println(tokenize(data));
+        val scanner = new Scanner(data);
+        while (scanner.hasNext()) {
+            System.out.println(scanner.line() + ":" + scanner.column() + " " + scanner.kind() + " " + scanner.next());
+        }
     }
 
 }
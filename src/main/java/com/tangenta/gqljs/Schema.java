@@ -1,11 +1,14 @@
 package com.tangenta.gqljs;
 
 import com.tangenta.gqljs.schemaType.*;
-import com.tangenta.gqljs.schemaType.util.Util;
+import com.tangenta.gqljs.schemaType.util.GqlDef;
+import com.tangenta.gqljs.schemaType.util.Symbols;
+import com.tangenta.gqljs.schemaType.util.TypeRef;
 import lombok.val;
 
 import java.util.*;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class Schema {
@@ -14,13 +17,32 @@ public class Schema {
     public final Map<String, Type> types;
     public final Map<String, Union> unions;
     public final Map<String, Enume> enums;
+    private final Symbols symbols;
+    private final Symbols.Kind[] kinds;
+    private final Object[] definitions;
+    /** The reverse of {@link #dependencyGraph()}: for each id, the types and unions with an edge to it, or null. */
+    private final int[][] dependents;
+    private final Map<String, TypeRef>[] variablesByType;
+    private final Map<String, Map<String, TypeRef>> variablesByOper;
+    private volatile Set<String>[] operationsById;
 
-    private Schema(List<Query> queries, List<Mutation> mutations, List<Type> types, List<Union> unions, List<Enume> enums) {
+    private Schema(List<Query> queries, List<Mutation> mutations, List<Type> types, List<Union> unions, List<Enume> enums,
+                   SchemaValidator index, Schema previous) {
         this.queries = Collections.unmodifiableMap(buildMap(queries, Query::getName));
         this.mutations = Collections.unmodifiableMap(buildMap(mutations, Mutation::getName));
         this.types = Collections.unmodifiableMap(buildMap(types, Type::getName));
         this.unions = Collections.unmodifiableMap(buildMap(unions, Union::getName));
         this.enums = Collections.unmodifiableMap(buildMap(enums, Enume::getName));
+        this.symbols = index.symbols;
+        this.kinds = index.kinds;
+        this.definitions = index.definitions;
+        // only definitions of the same table are comparable by id
+        Schema reusable = previous != null && previous.symbols == symbols ? previous : null;
+        Metrics.Span span = Metrics.start(Metrics.Phase.VARIABLES);
+        this.dependents = reusable != null ? updateDependents(reusable) : buildDependents();
+        this.variablesByType = collectVariablesByType(reusable);
+        this.variablesByOper = collectVariablesByOper(reusable);
+        Metrics.stop(span);
     }
 
     private static <T> Map<String, T> buildMap(List<T> list, Function<T, String> keyExtractor) {
@@ -46,116 +68,468 @@ public class Schema {
         return Optional.ofNullable(unions.get(name));
     }
 
-    public Map<String, String> allVariablesForOper(String operName) {
-        val map = new LinkedHashMap<String, String>();
-        Query query = queries.get(operName);
-        Mutation mut = mutations.get(operName);
+    /** The table the ids of this schema's definitions and type references belong to. */
+    public Symbols getSymbols() {
+        return symbols;
+    }
+
+    /** How the symbol {@code id} is defined in this schema. */
+    public Symbols.Kind kindOf(int id) {
+        return id < kinds.length ? kinds[id] : Symbols.Kind.UNDEFINED;
+    }
+
+    /** The type or input named by {@code id}, or null if it is not one. */
+    public Type typeById(int id) {
+        Symbols.Kind kind = kindOf(id);
+        return kind == Symbols.Kind.TYPE || kind == Symbols.Kind.INPUT ? (Type) definitions[id] : null;
+    }
+
+    public Union unionById(int id) {
+        return kindOf(id) == Symbols.Kind.UNION ? (Union) definitions[id] : null;
+    }
+
+    public Enume enumById(int id) {
+        return kindOf(id) == Symbols.Kind.ENUM ? (Enume) definitions[id] : null;
+    }
+
+    Object definitionAt(int id) {
+        return id < definitions.length ? definitions[id] : null;
+    }
+
+    public Map<String, TypeRef> allVariablesForOper(String operName) {
+        return variablesByOper.getOrDefault(operName, Collections.emptyMap());
+    }
 
-        if (query != null) {
-            map.putAll(query.getArgs());
-            map.putAll(allVariablesInType(query.getStrippedRetType()));
-            map.putAll(allVariablesInUnion(query.getStrippedRetType()));
-        } else if (mut != null) {
-            map.putAll(mut.getArgs());
-            map.putAll(allVariablesInType(mut.getStrippedRetType()));
-            map.putAll(allVariablesInUnion(mut.getStrippedRetType()));
+    /** Operations unchanged since {@code previous} whose return type kept its variables keep theirs too. */
+    private Map<String, Map<String, TypeRef>> collectVariablesByOper(Schema previous) {
+        val result = new HashMap<String, Map<String, TypeRef>>();
+        allOperations().forEach(oper -> {
+            Map<String, TypeRef> typeVariables = variablesIn(variablesByType, oper.getRetTypeId());
+            if (previous != null && previous.operation(oper) == oper
+                    && variablesIn(previous.variablesByType, oper.getRetTypeId()) == typeVariables) {
+                result.put(oper.getName(), previous.variablesByOper.get(oper.getName()));
+                return;
+            }
+            val map = new LinkedHashMap<String, TypeRef>(oper.getArgs());
+            map.putAll(typeVariables);
+            result.put(oper.getName(), Collections.unmodifiableMap(map));
+        });
+        return result;
+    }
+
+    /** The operation of this schema with the name and kind of {@code operation}, or null. */
+    private Operation operation(Operation operation) {
+        return (operation instanceof Query ? queries : mutations).get(operation.getName());
+    }
+
+    /** Ids whose definition is not the very same object in {@code previous}. */
+    private Deque<Integer> changedIds(Schema previous) {
+        val changed = new ArrayDeque<Integer>();
+        int ids = Math.max(definitions.length, previous.definitions.length);
+        for (int id = 0; id < ids; id++) {
+            if (definitionAt(id) != previous.definitionAt(id)) changed.push(id);
         }
-        return map;
+        return changed;
     }
 
-    private Map<String, String> allVariablesInType(String typename) {
-        val map = new LinkedHashMap<String, String>();
-        Type type = types.get(typename);
-        if (type == null) return map;
+    /**
+     * Names of the operations, in declaration order, that reach the type, input, union or enum
+     * {@code name} through their return and argument types, union members and the return and
+     * argument types of fields. Empty if {@code name} is not defined in this schema.
+     */
+    public Set<String> operationsReaching(String name) {
+        int id = symbols.lookup(name);
+        if (id < 0) return Collections.emptySet();
+        val index = operationIndex();
+        return id < index.length && index[id] != null ? index[id] : Collections.emptySet();
+    }
 
-        type.getFieldTypeMap().forEach(gqlDef -> {
-            map.putAll(gqlDef.getParams());
-            map.putAll(allVariablesInType(gqlDef.getStrippedRetType()));
-            map.putAll(allVariablesInUnion(gqlDef.getStrippedRetType()));
+    /**
+     * Operations that are new or changed compared to {@code previous}, or reach a type, input,
+     * union or enum that is.
+     */
+    public Set<String> affectedOperations(Schema previous) {
+        val changedOperations = new ArrayList<String>();
+        allOperations().forEach(op -> {
+            if (!sameOperation(op, previous.operation(op))) changedOperations.add(op.getName());
+        });
+        val changedDefinitions = new ArrayList<String>();
+        types.forEach((name, type) -> {
+            if (!type.equals(previous.types.get(name))) changedDefinitions.add(name);
+        });
+        unions.forEach((name, union) -> {
+            if (!union.equals(previous.unions.get(name))) changedDefinitions.add(name);
         });
+        enums.forEach((name, enume) -> {
+            if (!enume.equals(previous.enums.get(name))) changedDefinitions.add(name);
+        });
+        return operationsAffectedBy(changedOperations, changedDefinitions);
+    }
 
-        return map;
+    /**
+     * The operations of {@code changedOperations} still defined, and every operation reaching one of
+     * {@code changedDefinitions}. Walks back from the changed definitions to the operations instead
+     * of building the index behind {@link #operationsReaching}, so an edit does not pay for all of it.
+     */
+    public Set<String> operationsAffectedBy(Collection<String> changedOperations, Collection<String> changedDefinitions) {
+        val result = new HashSet<String>();
+        changedOperations.forEach(name -> {
+            if (queries.containsKey(name) || mutations.containsKey(name)) result.add(name);
+        });
+        val changed = new ArrayDeque<Integer>();
+        for (String name : changedDefinitions) {
+            int id = symbols.lookup(name);
+            if (id >= 0 && definitionAt(id) != null) changed.push(id);
+        }
+        if (changed.isEmpty()) return result;
+        BitSet affected = dependingOn(changed);
+        allOperations().forEach(op -> {
+            boolean reaches = affected.get(op.getRetTypeId());
+            for (TypeRef argType : op.getArgs().values()) reaches |= affected.get(argType.getBaseId());
+            if (reaches) result.add(op.getName());
+        });
+        return result;
+    }
+
+    private static boolean sameOperation(Operation operation, Operation other) {
+        return operation == other || other != null
+                && operation.getRetType().equals(other.getRetType())
+                && operation.getArgs().equals(other.getArgs())
+                && operation.needAuth() == other.needAuth()
+                && Objects.equals(operation.getCache(), other.getCache());
+    }
+
+    private Set<String>[] operationIndex() {
+        Set<String>[] index = operationsById;
+        if (index == null) {
+            // built on first use, a racing thread at worst builds an identical index
+            index = buildOperationIndex();
+            operationsById = index;
+        }
+        return index;
+    }
+
+    /**
+     * Marks every operation on the components holding its return and argument types, then pushes
+     * the marks along the dependency graph one strongly connected component at a time, so members
+     * of a component share one set.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Set<String>[] buildOperationIndex() {
+        val operations = allOperations().collect(Collectors.toList());
+        val graph = dependencyGraph();
+        val components = graph.components();
+        int[] componentOf = componentOf(components);
+
+        val reached = new BitSet[components.size()];
+        for (int i = 0; i < reached.length; i++) reached[i] = new BitSet();
+        for (int i = 0; i < operations.size(); i++) {
+            Operation op = operations.get(i);
+            if (graph.contains(op.getRetTypeId())) reached[componentOf[op.getRetTypeId()]].set(i);
+            for (TypeRef argType : op.getArgs().values()) {
+                if (graph.contains(argType.getBaseId())) reached[componentOf[argType.getBaseId()]].set(i);
+            }
+        }
+
+        Set<String>[] index = new Set[kinds.length];
+        // components come after everything they depend on, so walk them from the operations down
+        for (int i = components.size() - 1; i >= 0; i--) {
+            val operationNames = new LinkedHashSet<String>();
+            for (int op = reached[i].nextSetBit(0); op >= 0; op = reached[i].nextSetBit(op + 1)) {
+                operationNames.add(operations.get(op).getName());
+            }
+            val shared = Collections.unmodifiableSet(operationNames);
+            for (int member : components.get(i)) {
+                index[member] = shared;
+                for (int next : graph.successorsOf(member)) {
+                    if (graph.contains(next) && componentOf[next] != i) reached[componentOf[next]].or(reached[i]);
+                }
+            }
+        }
+        return index;
+    }
+
+    /** {@code ids} and the ids of every type and union depending on one of them, through {@link #dependents}. */
+    private BitSet dependingOn(Deque<Integer> ids) {
+        val found = new BitSet(kinds.length);
+        while (!ids.isEmpty()) {
+            int id = ids.pop();
+            if (found.get(id)) continue;
+            found.set(id);
+            int[] next = id < dependents.length ? dependents[id] : null;
+            if (next != null) {
+                for (int dependent : next) ids.push(dependent);
+            }
+        }
+        return found;
     }
 
-    private Map<String, String> allVariablesInUnion(String unionName) {
-        val map = new LinkedHashMap<String, String>();
-        Union union = unions.get(unionName);
-        if (union == null) return map;
+    private int[][] buildDependents() {
+        int[] counts = new int[kinds.length];
+        int[][] edges = new int[kinds.length][];
+        for (int id = 0; id < kinds.length; id++) {
+            if (definitions[id] == null) continue;
+            edges[id] = dependencies(definitions[id]);
+            for (int next : edges[id]) counts[next]++;
+        }
+        int[][] result = new int[kinds.length][];
+        for (int id = 0; id < kinds.length; id++) {
+            if (counts[id] != 0) result[id] = new int[counts[id]];
+            counts[id] = 0;
+        }
+        for (int id = 0; id < kinds.length; id++) {
+            if (edges[id] == null) continue;
+            for (int next : edges[id]) result[next][counts[next]++] = id;
+        }
+        return result;
+    }
 
-        union.getSubTypes().forEach(subTypes -> {
-            map.putAll(allVariablesInType(subTypes));
+    /**
+     * {@link #dependents} of {@code previous} with the edges of replaced definitions swapped for
+     * those of their replacements. Arrays not touched by a change are shared with {@code previous}.
+     */
+    private int[][] updateDependents(Schema previous) {
+        int[][] result = Arrays.copyOf(previous.dependents, kinds.length);
+        for (int id : changedIds(previous)) {
+            Object before = previous.definitionAt(id);
+            if (before != null) {
+                for (int next : dependencies(before)) result[next] = without(result[next], id);
+            }
+            Object after = definitionAt(id);
+            if (after != null) {
+                for (int next : dependencies(after)) result[next] = with(result[next], id);
+            }
+        }
+        return result;
+    }
+
+    private static int[] with(int[] ids, int id) {
+        if (ids == null) return new int[]{id};
+        int[] result = Arrays.copyOf(ids, ids.length + 1);
+        result[ids.length] = id;
+        return result;
+    }
+
+    private static int[] without(int[] ids, int id) {
+        for (int i = ids.length - 1; i >= 0; i--) {
+            if (ids[i] != id) continue;
+            if (ids.length == 1) return null;
+            int[] result = Arrays.copyOf(ids, ids.length - 1);
+            if (i != result.length) result[i] = ids[ids.length - 1];
+            return result;
+        }
+        return ids;
+    }
+
+    /**
+     * Like {@link #typeGraph()}, with enums and with edges to the argument types of fields, so every
+     * definition an operation depends on is reachable from its return and argument types.
+     */
+    private TypeGraph dependencyGraph() {
+        val graph = new TypeGraph(kinds.length);
+        types.values().forEach(type -> graph.add(type.getId(), dependencies(type)));
+        unions.values().forEach(union -> graph.add(union.getId(), dependencies(union)));
+        enums.values().forEach(enume -> graph.add(enume.getId(), dependencies(enume)));
+        return graph;
+    }
+
+    /** The edges of a type, union or enum in {@link #dependencyGraph()}. */
+    private static int[] dependencies(Object definition) {
+        if (definition instanceof Union) return subTypeIds((Union) definition);
+        if (!(definition instanceof Type)) return new int[0];
+        val fields = ((Type) definition).getFieldTypeMap();
+        int count = 0;
+        for (GqlDef gqlDef : fields) count += 1 + gqlDef.getParams().size();
+        int[] targets = new int[count];
+        int next = 0;
+        for (GqlDef gqlDef : fields) {
+            targets[next++] = gqlDef.getRetTypeId();
+            for (TypeRef paramType : gqlDef.getParams().values()) targets[next++] = paramType.getBaseId();
+        }
+        return targets;
+    }
+
+    TypeGraph typeGraph() {
+        return typeGraph(null);
+    }
+
+    /** The part of {@link #typeGraph()} on the ids in {@code nodes}, or all of it if null. */
+    private TypeGraph typeGraph(BitSet nodes) {
+        val graph = new TypeGraph(kinds.length);
+        types.values().forEach(type -> {
+            if (nodes != null && !nodes.get(type.getId())) return;
+            val fields = type.getFieldTypeMap();
+            int[] targets = new int[fields.size()];
+            for (int i = 0; i < targets.length; i++) targets[i] = fields.get(i).getRetTypeId();
+            graph.add(type.getId(), targets);
         });
-        return map;
+        unions.values().forEach(union -> {
+            if (nodes == null || nodes.get(union.getId())) graph.add(union.getId(), subTypeIds(union));
+        });
+        return graph;
+    }
+
+    private static int[] subTypeIds(Union union) {
+        int[] ids = new int[union.getSubTypes().size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = union.getSubTypeId(i);
+        return ids;
+    }
+
+    /** The index in {@code components} of the component holding each id, or -1 for ids in none. */
+    private int[] componentOf(List<int[]> components) {
+        int[] componentOf = new int[kinds.length];
+        Arrays.fill(componentOf, -1);
+        for (int i = 0; i < components.size(); i++) {
+            for (int member : components.get(i)) componentOf[member] = i;
+        }
+        return componentOf;
+    }
+
+    /**
+     * Variables reachable from each type or union, computed once per strongly connected component
+     * in dependency order. Every member of a cycle shares the variables of the whole cycle.
+     *
+     * <p>Definitions that neither changed since {@code previous} nor depend on one that did reach
+     * the very same definitions as before, so they share its variables and only the others are
+     * computed again. No shared definition reaches one computed again, so the components of the
+     * latter are the same as in the whole graph.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Map<String, TypeRef>[] collectVariablesByType(Schema previous) {
+        Map<String, TypeRef>[] result = new Map[kinds.length];
+        BitSet stale = null;
+        if (previous != null) {
+            stale = dependingOn(changedIds(previous));
+            int shared = Math.min(result.length, previous.variablesByType.length);
+            for (int id = 0; id < shared; id++) {
+                if (!stale.get(id)) result[id] = previous.variablesByType[id];
+            }
+        }
+        for (int[] component : typeGraph(stale).components()) {
+            val map = new LinkedHashMap<String, TypeRef>();
+            // members of this component have no variables yet, so only other components add any
+            for (int member : byName(component)) {
+                Type type = typeById(member);
+                if (type != null) {
+                    type.getFieldTypeMap().forEach(gqlDef -> {
+                        map.putAll(gqlDef.getParams());
+                        map.putAll(variablesIn(result, gqlDef.getRetTypeId()));
+                    });
+                }
+                Union union = unionById(member);
+                if (union != null) {
+                    for (int i = 0; i < union.getSubTypes().size(); i++) map.putAll(variablesIn(result, union.getSubTypeId(i)));
+                }
+            }
+            val variables = Collections.unmodifiableMap(map);
+            for (int member : component) result[member] = variables;
+        }
+        return result;
+    }
+
+    /**
+     * The members of a component in name order. Discovery order depends on where the search entered
+     * the cycle, which the definitions around it decide, and variables shared with a previous schema
+     * must come out the same as when computed afresh.
+     */
+    private int[] byName(int[] component) {
+        if (component.length == 1) return component;
+        return Arrays.stream(component).boxed().sorted(Comparator.comparing(symbols::name))
+                .mapToInt(Integer::intValue).toArray();
+    }
+
+    private static Map<String, TypeRef> variablesIn(Map<String, TypeRef>[] variablesByType, int id) {
+        Map<String, TypeRef> variables = id < variablesByType.length ? variablesByType[id] : null;
+        return variables != null ? variables : Collections.emptyMap();
     }
 
     public static class SchemaBuilder {
+        private final Symbols symbols;
         private List<Query> queries = new LinkedList<>();
         private List<Mutation> mutations = new LinkedList<>();
         private List<Type> types = new LinkedList<>();
         private List<Union> unions = new LinkedList<>();
         private List<Enume> enums = new LinkedList<>();
+        private Map<Object, Position> positions = new IdentityHashMap<>();
+
+        private SchemaBuilder(Symbols symbols) {
+            this.symbols = symbols;
+        }
 
         public SchemaBuilder appendQuery(Query query) {
             queries.add(query);
             return this;
         }
 
+        public SchemaBuilder appendQuery(Query query, Position position) {
+            positions.put(query, position);
+            return appendQuery(query);
+        }
+
         public SchemaBuilder appendMutation(Mutation mutation) {
             mutations.add(mutation);
             return this;
         }
 
+        public SchemaBuilder appendMutation(Mutation mutation, Position position) {
+            positions.put(mutation, position);
+            return appendMutation(mutation);
+        }
+
         public SchemaBuilder appendType(Type type) {
             types.add(type);
             return this;
         }
+
+        public SchemaBuilder appendType(Type type, Position position) {
+            positions.put(type, position);
+            return appendType(type);
+        }
+
         public SchemaBuilder appendUnion(Union union) {
             unions.add(union);
             return this;
         }
+
+        public SchemaBuilder appendUnion(Union union, Position position) {
+            positions.put(union, position);
+            return appendUnion(union);
+        }
+
         public SchemaBuilder appendEnume(Enume enume) {
             enums.add(enume);
             return this;
         }
-        public Schema build() {
-            checkValidation();
-            return new Schema(queries, mutations, types, unions, enums);
-        }
 
-        private void checkValidation() {
-            String[] names = concat(
-                    types.stream().map(Type::getName),
-                    unions.stream().map(Union::getName),
-                    enums.stream().map(Enume::getName)
-            ).sorted().toArray(String[]::new);
+        public SchemaBuilder appendEnume(Enume enume, Position position) {
+            positions.put(enume, position);
+            return appendEnume(enume);
+        }
 
-            Arrays.stream(names).reduce("", (last, cur) -> {
-                if (cur.equals(last)) {
-                    throw new RuntimeException("name: " + cur + " is used for more than once in (union | type | enum)");
-                }
-                return cur;
-            });
-
-            concat(
-                    queries.stream().map(Query::getStrippedRetType),
-                    queries.stream().flatMap(query -> query.getArgs().values().stream().map(Util::strip)),
-                    mutations.stream().map(Mutation::getStrippedRetType),
-                    mutations.stream().flatMap(mutation -> mutation.getArgs().values().stream().map(Util::strip)),
-                    unions.stream().flatMap(union -> union.getSubTypes().stream())
-            ).forEach(type -> {
-                if (!Type.isScalar(type) && Arrays.binarySearch(names, type) < 0) {
-                    throw new RuntimeException("type: " + type + " is not defined");
-                }
-            });
+        /** Validates every definition and throws a {@link SchemaValidationException} listing all errors. */
+        public Schema build() {
+            return build(null);
         }
 
-        @SafeVarargs
-        private static <T> Stream<T> concat(Stream<T>... streams) {
-            return Arrays.stream(streams).reduce(Stream.empty(), Stream::concat);
+        /**
+         * Like {@link #build()}, but only checks the references of definitions that are not the same
+         * objects as in {@code previous}, which must be a schema that passed validation, and reuses
+         * what it derived from the definitions that did not change.
+         */
+        public Schema build(Schema previous) {
+            val index = new SchemaValidator(symbols, positions, previous);
+            Metrics.Span span = Metrics.start(Metrics.Phase.VALIDATE);
+            try {
+                index.validate(queries, mutations, types, unions, enums);
+            } finally {
+                Metrics.stop(span);
+            }
+            return new Schema(queries, mutations, types, unions, enums, index, previous);
         }
     }
 
-    public static SchemaBuilder getBuilder() {
-        return new SchemaBuilder();
+    /** A builder for definitions parsed with {@code symbols}. */
+    public static SchemaBuilder getBuilder(Symbols symbols) {
+        return new SchemaBuilder(symbols);
     }
 }
@@ -0,0 +1,193 @@
+package com.tangenta.gqljs;
+
+import com.tangenta.gqljs.schemaType.util.Symbols;
+import lombok.Value;
+import lombok.val;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads a schema split across several files, given a directory or a glob such as
+ * {@code schema/**.gql}. Files are parsed concurrently and their definitions are merged in path
+ * order, so the result does not depend on which file finishes first. Definitions clashing across
+ * files are reported by validation with the file and position of both.
+ */
+public class SchemaLoader {
+    private static final String GLOB_CHARS = "*?[{";
+    private static final String[] SCHEMA_EXTENSIONS = {".gql", ".graphql", ".graphqls"};
+
+    @Value
+    public static class FileStats {
+        Path file;
+        int definitions;
+        long parseNanos;
+        /** {@link SchemaSnapshot#hash(byte[])} of the content that was parsed. */
+        byte[] hash;
+    }
+
+    @Value
+    public static class Result {
+        Schema schema;
+        List<FileStats> files;
+    }
+
+    /** Whether {@code location} names a directory or a glob rather than a single schema file. */
+    public static boolean isMultiFile(String location) {
+        return isGlob(location) || Files.isDirectory(Paths.get(location));
+    }
+
+    public static Result load(String location, Executor executor) throws IOException {
+        return load(resolve(location), executor);
+    }
+
+    public static Result load(List<Path> files, Executor executor) throws IOException {
+        if (files.isEmpty()) throw new RuntimeException("no schema files to load");
+        Path base = commonParent(files);
+
+        val symbols = new Symbols();
+        val parses = new ArrayList<CompletableFuture<ParsedFile>>(files.size());
+        files.forEach(file -> parses.add(CompletableFuture.supplyAsync(() -> parse(file, symbols), executor)));
+
+        val builder = Schema.getBuilder(symbols);
+        val stats = new ArrayList<FileStats>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            ParsedFile parsed;
+            try {
+                parsed = parses.get(i).join();
+            } catch (CompletionException e) {
+                parses.forEach(future -> future.cancel(false));
+                if (e.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException) e.getCause()).getCause();
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw e;
+            }
+            String name = base.relativize(files.get(i).toAbsolutePath()).toString();
+            parsed.definitions.forEach(definition -> definition.appendTo(builder,
+                    new Position(name, definition.getLine(), definition.getColumn())));
+            stats.add(new FileStats(files.get(i), parsed.definitions.size(), parsed.nanos, parsed.hash));
+        }
+        return new Result(builder.build(), Collections.unmodifiableList(stats));
+    }
+
+    /**
+     * The files named by {@code location}, sorted by path: every schema file ({@code .gql},
+     * {@code .graphql} or {@code .graphqls}) below a directory, or every file matching a glob. Hidden
+     * files and directories, whose names start with a dot, and schema snapshots are skipped.
+     */
+    public static List<Path> resolve(String location) throws IOException {
+        Path root;
+        PathMatcher matcher;
+        if (isGlob(location)) {
+            int firstGlob = firstGlobChar(location);
+            int separator = Math.max(location.lastIndexOf('/', firstGlob), location.lastIndexOf('\\', firstGlob));
+            root = Paths.get(separator < 0 ? "." : location.substring(0, separator + 1));
+            String pattern = location.substring(separator + 1);
+            matcher = root.getFileSystem().getPathMatcher("glob:" + pattern);
+        } else {
+            root = Paths.get(location);
+            matcher = SchemaLoader::isSchemaFile;
+        }
+
+        Path start = root;
+        val files = new ArrayList<Path>();
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return !dir.equals(start) && isHidden(dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && !isHidden(file) && !SchemaSnapshot.isSnapshot(file)
+                        && matcher.matches(start.relativize(file))) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(files);
+        return files;
+    }
+
+    public static String report(Result result) {
+        val builder = new StringBuilder();
+        result.files.forEach(stats -> builder.append(String.format("%s: %d definitions parsed in %.1f ms%n",
+                stats.file, stats.definitions, stats.parseNanos / 1e6)));
+        return builder.toString();
+    }
+
+    private static class ParsedFile {
+        final List<Definition> definitions;
+        final long nanos;
+        final byte[] hash;
+
+        ParsedFile(List<Definition> definitions, long nanos, byte[] hash) {
+            this.definitions = definitions;
+            this.nanos = nanos;
+            this.hash = hash;
+        }
+    }
+
+    private static ParsedFile parse(Path file, Symbols symbols) {
+        long start = System.nanoTime();
+        Metrics.Span span = Metrics.start(Metrics.Phase.PARSE);
+        try {
+            byte[] content = Files.readAllBytes(file);
+            val definitions = new ArrayList<Definition>();
+            val scanner = new Scanner(Channels.newChannel(new ByteArrayInputStream(content)), StandardCharsets.UTF_8, symbols);
+            while (scanner.hasNext()) {
+                definitions.add(SchemaParser.definition(scanner));
+            }
+            return new ParsedFile(definitions, System.nanoTime() - start, SchemaSnapshot.hash(content));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (UncheckedIOException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new RuntimeException(file + ": " + e.getMessage(), e);
+        } finally {
+            Metrics.stop(span);
+        }
+    }
+
+    private static Path commonParent(List<Path> files) {
+        Path base = files.get(0).toAbsolutePath().getParent();
+        for (Path file : files) {
+            while (!file.toAbsolutePath().startsWith(base)) base = base.getParent();
+        }
+        return base;
+    }
+
+    private static boolean isSchemaFile(Path path) {
+        String name = path.getFileName().toString();
+        for (String extension : SCHEMA_EXTENSIONS) {
+            if (name.endsWith(extension)) return true;
+        }
+        return false;
+    }
+
+    private static boolean isHidden(Path path) {
+        Path name = path.getFileName();
+        return name != null && name.toString().startsWith(".");
+    }
+
+    private static boolean isGlob(String location) {
+        return firstGlobChar(location) >= 0;
+    }
+
+    private static int firstGlobChar(String location) {
+        for (int i = 0; i < location.length(); i++) {
+            if (GLOB_CHARS.indexOf(location.charAt(i)) >= 0) return i;
+        }
+        return -1;
+    }
+}
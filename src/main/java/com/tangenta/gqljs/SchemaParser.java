@@ -2,192 +2,238 @@ package com.tangenta.gqljs;
 
 import com.tangenta.gqljs.schemaType.*;
 import com.tangenta.gqljs.schemaType.util.GqlDef;
-import javafx.util.Pair;
+import com.tangenta.gqljs.schemaType.util.TypeRef;
 import lombok.val;
 
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.util.*;
 
 public class SchemaParser {
-    public static Schema parseSchema(String source) {
+    private static final Set<String> CACHE_ARGUMENTS = new HashSet<>(Arrays.asList("ttl", "scope", "max"));
+    private static final String DURATION_UNITS = "smhd";
+    private static final int[] DURATION_SECONDS = {1, 60, 60 * 60, 24 * 60 * 60};
+
+    public static Schema parseSchema(CharSequence source) {
         return gqlSchema(new Scanner(source));
     }
 
+    public static Schema parseSchema(ReadableByteChannel channel, Charset charset) {
+        return gqlSchema(new Scanner(channel, charset));
+    }
+
     private static Schema gqlSchema(Scanner scanner) {
-        Schema.SchemaBuilder builder = Schema.getBuilder();
-        while (scanner.hasNext()) {
-            switch (scanner.peek().toLowerCase()) {
-                case "@query": builder.appendQuery(query(scanner)); break;
-                case "+@query": builder.appendQuery(queryA(scanner)); break;
-                case "@mutation": builder.appendMutation(mutation(scanner)); break;
-                case "+@mutation": builder.appendMutation(mutationA(scanner)); break;
-                case "type": builder.appendType(type(scanner)); break;
-                case "union": builder.appendUnion(union(scanner)); break;
-                case "enum": builder.appendEnume(enume(scanner)); break;
-                case "input": builder.appendType(input(scanner)); break;
-                default: throw new RuntimeException("unknown schema " + scanner.peek());
+        Schema.SchemaBuilder builder = Schema.getBuilder(scanner.symbols());
+        Metrics.Span span = Metrics.start(Metrics.Phase.PARSE);
+        try {
+            while (scanner.hasNext()) {
+                definition(scanner).appendTo(builder);
             }
+        } finally {
+            Metrics.stop(span);
         }
         return builder.build();
     }
 
+    static Definition definition(Scanner scanner) {
+        Scanner.Keyword keyword = scanner.keyword();
+        if (keyword == null) throw scanner.error("definition");
+        int start = scanner.offset();
+        int line = scanner.line();
+        int column = scanner.column();
+        Object value;
+        switch (keyword) {
+            case QUERY: value = query(scanner); break;
+            case AUTH_QUERY: value = queryA(scanner); break;
+            case MUTATION: value = mutation(scanner); break;
+            case AUTH_MUTATION: value = mutationA(scanner); break;
+            case TYPE: value = type(scanner); break;
+            case UNION: value = union(scanner); break;
+            case ENUM: value = enume(scanner); break;
+            case INPUT: value = input(scanner); break;
+            default: throw scanner.error("definition");
+        }
+        Metrics.count(Metrics.Counter.DEFINITIONS, 1);
+        return new Definition(keyword, value, start, scanner.previousEnd(), line, column);
+    }
+
     private static Query query(Scanner tokens) {
-        assertEq(tokens.next().toLowerCase(), "@query");
+        tokens.expect(Scanner.Keyword.QUERY);
         GqlDef gqlDef = def(tokens);
-        return new Query(gqlDef.getDefName(), gqlDef.getRetName(), gqlDef.getParams(), false);
+        return new Query(gqlDef.getDefName(), gqlDef.getRetType(), gqlDef.getParams(), false, cache(tokens, false));
     }
 
     private static Query queryA(Scanner tokens) {
-        assertEq(tokens.next().toLowerCase(), "+@query");
+        tokens.expect(Scanner.Keyword.AUTH_QUERY);
         GqlDef gqlDef = def(tokens);
-        return new Query(gqlDef.getDefName(), gqlDef.getRetName(), gqlDef.getParams(), true);
+        return new Query(gqlDef.getDefName(), gqlDef.getRetType(), gqlDef.getParams(), true, cache(tokens, true));
     }
 
     private static Mutation mutation(Scanner tokens) {
-        assertEq(tokens.next().toLowerCase(), "@mutation");
+        tokens.expect(Scanner.Keyword.MUTATION);
         GqlDef gqlDef = def(tokens);
-        return new Mutation(gqlDef.getDefName(), gqlDef.getRetName(), gqlDef.getParams(), false);
+        return new Mutation(gqlDef.getDefName(), gqlDef.getRetType(), gqlDef.getParams(), false);
     }
 
     private static Mutation mutationA(Scanner tokens) {
-        assertEq(tokens.next().toLowerCase(), "+@mutation");
+        tokens.expect(Scanner.Keyword.AUTH_MUTATION);
         GqlDef gqlDef = def(tokens);
-        return new Mutation(gqlDef.getDefName(), gqlDef.getRetName(), gqlDef.getParams(), true);
+        return new Mutation(gqlDef.getDefName(), gqlDef.getRetType(), gqlDef.getParams(), true);
+    }
+
+    /** The optional {@code @cache(ttl: 1d, scope: user, max: 50)} after a query, where only ttl is required. */
+    private static CachePolicy cache(Scanner tokens, boolean needAuth) {
+        if (!tokens.hasNext() || tokens.keyword() != Scanner.Keyword.CACHE) return null;
+        String at = tokens.line() + ":" + tokens.column();
+        tokens.advance();
+        int ttl = -1;
+        CachePolicy.Scope scope = needAuth ? CachePolicy.Scope.USER : CachePolicy.Scope.PUBLIC;
+        int maxEntries = CachePolicy.DEFAULT_MAX_ENTRIES;
+        tokens.expect('(');
+        do {
+            String argument = tokens.hasNext() ? tokens.peek() : "";
+            if (!CACHE_ARGUMENTS.contains(argument)) throw tokens.error("ttl, scope or max");
+            tokens.advance();
+            tokens.expect(':');
+            switch (argument) {
+                case "ttl": ttl = duration(tokens); break;
+                case "scope": scope = scope(tokens); break;
+                default: maxEntries = positive(tokens); break;
+            }
+        } while (optional(tokens, ','));
+        tokens.expect(')');
+
+        if (ttl < 0) throw new RuntimeException("@cache at " + at + " needs a ttl");
+        if (scope == CachePolicy.Scope.USER && !needAuth) {
+            throw new RuntimeException("@cache at " + at + " has scope user but the query does not take auth");
+        }
+        return new CachePolicy(ttl, scope, maxEntries);
+    }
+
+    /** Seconds of a duration such as {@code 90}, {@code 30s}, {@code 10m}, {@code 2h} or {@code 1d}. */
+    private static int duration(Scanner tokens) {
+        String text = tokens.hasNext() ? tokens.peek() : "";
+        int unit = DURATION_UNITS.indexOf(text.isEmpty() ? ' ' : text.charAt(text.length() - 1));
+        String digits = unit < 0 ? text : text.substring(0, text.length() - 1);
+        if (digits.isEmpty() || !digits.chars().allMatch(Character::isDigit) || digits.length() > 9) {
+            throw tokens.error("duration such as 30s, 10m or 1d");
+        }
+        long seconds = Long.parseLong(digits) * (unit < 0 ? 1 : DURATION_SECONDS[unit]);
+        if (seconds > Integer.MAX_VALUE) throw tokens.error("duration of at most " + Integer.MAX_VALUE + "s");
+        tokens.advance();
+        return (int) seconds;
+    }
+
+    private static CachePolicy.Scope scope(Scanner tokens) {
+        String text = tokens.hasNext() ? tokens.peek() : "";
+        for (CachePolicy.Scope scope : CachePolicy.Scope.values()) {
+            if (scope.name().equalsIgnoreCase(text)) {
+                tokens.advance();
+                return scope;
+            }
+        }
+        throw tokens.error("public or user");
+    }
+
+    private static int positive(Scanner tokens) {
+        String text = tokens.hasNext() ? tokens.peek() : "";
+        if (text.isEmpty() || text.length() > 9 || !text.chars().allMatch(Character::isDigit) || Integer.parseInt(text) == 0) {
+            throw tokens.error("positive number");
+        }
+        tokens.advance();
+        return Integer.parseInt(text);
     }
 
     private static Union union(Scanner tokens) {
-        assertEq(tokens.next().toLowerCase(), "union");
-        String unionName = tokens.next();
-        assertEq(tokens.next(), ("="));
+        tokens.expect(Scanner.Keyword.UNION);
+        String unionName = tokens.nextName();
+        tokens.expect('=');
         List<String> types = typeList(tokens);
-        return new Union(unionName, types);
+        return new Union(tokens.symbols(), unionName, types);
     }
 
     private static Type type(Scanner tokens) {
-        assertEq(tokens.next().toLowerCase(), "type");
-        String typeName = tokens.next();
-        assertEq(tokens.next(), ("{"));
+        tokens.expect(Scanner.Keyword.TYPE);
+        String typeName = tokens.nextName();
+        tokens.expect('{');
         List<GqlDef> defs = defs(tokens);
-        assertEq(tokens.next(), ("}"));
+        tokens.expect('}');
 
-        return new Type(typeName, "type", defs);
+        return new Type(tokens.symbols(), typeName, "type", defs);
     }
 
     private static Enume enume(Scanner tokens) {
-        assertEq(tokens.next().toLowerCase(), ("enum"));
-        String name = tokens.next();
-        assertEq(tokens.next(), ("{"));
+        tokens.expect(Scanner.Keyword.ENUM);
+        String name = tokens.nextName();
+        tokens.expect('{');
         List<String> enumVals = enumDefs(tokens);
-        assertEq(tokens.next(), ("}"));
+        tokens.expect('}');
 
-        return new Enume(name, enumVals);
+        return new Enume(tokens.symbols(), name, enumVals);
     }
 
     private static Type input(Scanner tokens) {
-        assertEq(tokens.next().toLowerCase(), "input");
-        String typeName = tokens.next();
-        assertEq(tokens.next(), ("{"));
+        tokens.expect(Scanner.Keyword.INPUT);
+        String typeName = tokens.nextName();
+        tokens.expect('{');
         List<GqlDef> defs = defs(tokens);
-        assertEq(tokens.next(), ("}"));
+        tokens.expect('}');
 
-        return new Type(typeName, "input", defs);
+        return new Type(tokens.symbols(), typeName, "input", defs);
     }
 
-    private static Map<String, String> argList(Scanner tokens) {
-        if (tokens.peek().equals("(")) {
-            tokens.next();
-            val kvPair = arg(tokens);
-            val restKvMap = cArgList(tokens);
-            assertEq(tokens.next(), (")"));
-            restKvMap.put(kvPair.getKey(), kvPair.getValue());
-            return restKvMap;
-        } else {
-            return new LinkedHashMap<>();
-        }
-    }
-
-    private static Pair<String, String> arg(Scanner tokens) {
-        val argName = tokens.next();
-        assertEq(tokens.next(), ":");
-        val argValue = tokens.next();
-        return new Pair<>(argName, argValue);
-    }
-
-    private static Map<String, String> cArgList(Scanner tokens) {
-        if (tokens.peek().equals(",")) {
-            tokens.next();
-            val paramPair = arg(tokens);
-            val restParamMap = cArgList(tokens);
-            restParamMap.put(paramPair.getKey(), paramPair.getValue());
-            return restParamMap;
-        } else {
-            return new LinkedHashMap<>();
-        }
+    private static Map<String, TypeRef> argList(Scanner tokens) {
+        val args = new LinkedHashMap<String, TypeRef>();
+        if (!tokens.peekIs('(')) return args;
+        tokens.advance();
+        do {
+            String argName = tokens.nextName();
+            tokens.expect(':');
+            args.put(argName, tokens.nextTypeRef());
+        } while (optional(tokens, ','));
+        tokens.expect(')');
+        return args;
     }
 
     private static List<String> typeList(Scanner tokens) {
-        String typename = tokens.next();
-        List<String> restTypes = cTypeList(tokens);
-        restTypes.add(typename);
-        return restTypes;
-    }
-
-    private static List<String> cTypeList(Scanner tokens) {
-        if (tokens.hasNext() && tokens.peek().equals("|")) {
-            tokens.next();
-            return typeList(tokens);
-        } else {
-            return new LinkedList<>();
-        }
+        val types = new ArrayList<String>();
+        do {
+            types.add(tokens.nextName());
+        } while (optional(tokens, '|'));
+        types.trimToSize();
+        return types;
     }
 
     private static List<GqlDef> defs(Scanner tokens) {
-        GqlDef def = def(tokens);
-        List<GqlDef> optionDefs = optionDefs(tokens);
-        optionDefs.add(def);
-        return optionDefs;
-    }
-
-    private static List<GqlDef> optionDefs(Scanner tokens) {
-        if (!tokens.peek().equals("}")) {
-            GqlDef def = def(tokens);
-            List<GqlDef> defs = optionDefs(tokens);
-            defs.add(def);
-            return defs;
-        } else {
-            return new LinkedList<>();
-        }
+        val defs = new ArrayList<GqlDef>();
+        do {
+            defs.add(def(tokens));
+        } while (!tokens.peekIs('}'));
+        defs.trimToSize();
+        return defs;
     }
 
     private static List<String> enumDefs(Scanner tokens) {
-        String name = tokens.next();
-        List<String> rest = optionEnumDefs(tokens);
-        rest.add(name);
-        return rest;
-    }
-
-    private static List<String> optionEnumDefs(Scanner tokens) {
-        if (!tokens.peek().equals("}")) {
-            String enumName = tokens.next();
-            List<String> rest = optionEnumDefs(tokens);
-            rest.add(enumName);
-            return rest;
-        } else {
-            return new LinkedList<>();
-        }
+        val names = new ArrayList<String>();
+        do {
+            names.add(tokens.nextName());
+        } while (!tokens.peekIs('}'));
+        names.trimToSize();
+        return names;
     }
 
-    private static GqlDef def(Scanner scanner) {
-        String name = scanner.next();
-        Map<String, String> args = argList(scanner);
-        assertEq(scanner.next(), ":");
-        String retName = scanner.next();
-        return new GqlDef(name, args, retName);
+    private static boolean optional(Scanner tokens, char punctuator) {
+        if (!tokens.peekIs(punctuator)) return false;
+        tokens.advance();
+        return true;
     }
 
-    private static void assertEq(String left, String right) {
-        if (!left.equals(right)) {
-            throw new RuntimeException("assertion error, left: \"" + left + "\" right: \"" + right + "\"");
-        }
+    private static GqlDef def(Scanner scanner) {
+        String name = scanner.nextName();
+        Map<String, TypeRef> args = argList(scanner);
+        scanner.expect(':');
+        TypeRef retType = scanner.nextTypeRef();
+        return new GqlDef(name, args, retType);
     }
 
     public static void main(String[] args) {
@@ -199,6 +245,22 @@ public class SchemaParser {
         Scanner tokens = new Scanner(data);
         System.out.println(enume(tokens));
 
+        // types named like keywords are references, not keywords
+        Schema keywords = parseSchema("@query find(filter: Input): Type\n" +
+                "type Type {\n" +
+                "    a(filter: Input): Int\n" +
+                "    b: [Union!]\n" +
+                "    c: Enum\n" +
+                "}\n" +
+                "input Input {\n" +
+                "    name: String\n" +
+                "}\n" +
+                "union Union = Type\n" +
+                "enum Enum {\n" +
+                "    ONE\n" +
+                "}");
+        System.out.println(keywords.types.get("Type").getFieldTypeMap());
+
         Schema schema = parseSchema("# 最热讨论\n" +
                 "@query hots: HotsResult! # 依赖于日期，每日更新，缓存\n" +
                 "\n" +
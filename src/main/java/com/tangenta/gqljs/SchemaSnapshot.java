@@ -0,0 +1,379 @@
+package com.tangenta.gqljs;
+
+import com.tangenta.gqljs.schemaType.*;
+import com.tangenta.gqljs.schemaType.util.GqlDef;
+import com.tangenta.gqljs.schemaType.util.Symbols;
+import com.tangenta.gqljs.schemaType.util.TypeRef;
+import lombok.val;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Binary snapshot of a parsed {@link Schema}, stored next to the schema file and keyed by the
+ * SHA-256 of its content. Every distinct name is stored once in a string table and decoded once on
+ * load; definitions refer to names by their index in the table.
+ *
+ * <p>Layout: magic, version, source hash, string table, then queries, mutations, types, unions and
+ * enums. All counts, string indexes and cache settings are unsigned varints.
+ */
+public class SchemaSnapshot {
+    private static final int MAGIC = 0x47514C53;
+    private static final int VERSION = 2;
+    private static final int HASH_LENGTH = 32;
+    private static final String SUFFIX = ".snapshot";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** Loads the snapshot of {@code schemaPath} if it is up to date, otherwise parses and snapshots it. */
+    public static Schema load(Path schemaPath) throws IOException {
+        byte[] content = Files.readAllBytes(schemaPath);
+        return load(schemaPath, content, hash(content));
+    }
+
+    /**
+     * Like {@link #load(Path)} for {@code content} already read from the schema file, whose
+     * {@link #hash(byte[])} is {@code hash}. The file is not read again, so the snapshot always
+     * matches the content it is stored under.
+     */
+    public static Schema load(Path schemaPath, byte[] content, byte[] hash) throws IOException {
+        Path snapshotPath = snapshotPath(schemaPath);
+        if (Files.isRegularFile(snapshotPath)) {
+            try {
+                Schema schema = read(snapshotPath, hash);
+                if (schema != null) {
+                    Metrics.count(Metrics.Counter.SNAPSHOT_HITS, 1);
+                    return schema;
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("ignoring unreadable snapshot " + snapshotPath + ": " + e);
+            }
+        }
+
+        Metrics.count(Metrics.Counter.SNAPSHOT_MISSES, 1);
+        Schema schema;
+        try {
+            schema = SchemaParser.parseSchema(Channels.newChannel(new ByteArrayInputStream(content)), StandardCharsets.UTF_8);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        try {
+            write(schema, snapshotPath, hash);
+        } catch (IOException e) {
+            System.err.println("could not write snapshot " + snapshotPath + ": " + e);
+        }
+        return schema;
+    }
+
+    public static Path snapshotPath(Path schemaPath) {
+        return schemaPath.resolveSibling(schemaPath.getFileName() + SUFFIX);
+    }
+
+    /** Whether {@code path} is a snapshot or a snapshot being written. */
+    static boolean isSnapshot(Path path) {
+        String name = path.getFileName().toString();
+        return name.endsWith(SUFFIX) || name.contains(SUFFIX) && name.endsWith(TEMP_SUFFIX);
+    }
+
+    public static byte[] hash(byte[] content) {
+        val digest = sha256();
+        digest.update(content);
+        return digest.digest();
+    }
+
+    public static byte[] hash(Path path) throws IOException {
+        val digest = sha256();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            val buffer = ByteBuffer.allocate(64 * 1024);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Returns the snapshot's schema, or null if it was taken from different source content. */
+    public static Schema read(Path snapshotPath, byte[] expectedHash) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+            byte[] hash = new byte[HASH_LENGTH];
+            buffer.get(hash);
+            if (!Arrays.equals(hash, expectedHash)) return null;
+            return new SnapshotReader(buffer).schema();
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated snapshot", e);
+        }
+    }
+
+    /** Writes to a temporary file first so concurrent readers never see a partial snapshot. */
+    public static void write(Schema schema, Path snapshotPath, byte[] hash) throws IOException {
+        val strings = new LinkedHashMap<String, Integer>();
+        collectStrings(schema, strings);
+
+        Path directory = snapshotPath.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, snapshotPath.getFileName().toString(), TEMP_SUFFIX);
+        try {
+            try (val out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.write(hash);
+                new SnapshotWriter(out, strings).schema(schema);
+            }
+            try {
+                Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void collectStrings(Schema schema, Map<String, Integer> strings) {
+        schema.allOperations().forEach(op -> {
+            intern(strings, op.getName());
+            intern(strings, op.getRetType().getText());
+            op.getArgs().forEach((name, type) -> {
+                intern(strings, name);
+                intern(strings, type.getText());
+            });
+        });
+        schema.types.values().forEach(type -> {
+            intern(strings, type.getName());
+            intern(strings, type.getTypename());
+            type.getFieldTypeMap().forEach(gqlDef -> {
+                intern(strings, gqlDef.getDefName());
+                intern(strings, gqlDef.getRetType().getText());
+                gqlDef.getParams().forEach((name, paramType) -> {
+                    intern(strings, name);
+                    intern(strings, paramType.getText());
+                });
+            });
+        });
+        schema.unions.values().forEach(union -> {
+            intern(strings, union.getName());
+            union.getSubTypes().forEach(subType -> intern(strings, subType));
+        });
+        schema.enums.values().forEach(enume -> {
+            intern(strings, enume.getName());
+            enume.getEnums().forEach(value -> intern(strings, value));
+        });
+    }
+
+    private static void intern(Map<String, Integer> strings, String value) {
+        strings.putIfAbsent(value, strings.size());
+    }
+
+    private static class SnapshotWriter {
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings;
+
+        SnapshotWriter(DataOutputStream out, Map<String, Integer> strings) {
+            this.out = out;
+            this.strings = strings;
+        }
+
+        void schema(Schema schema) throws IOException {
+            varint(strings.size());
+            for (String value : strings.keySet()) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                varint(bytes.length);
+                out.write(bytes);
+            }
+
+            varint(schema.queries.size());
+            for (Query query : schema.queries.values()) {
+                operation(query);
+                cache(query.getCache());
+            }
+            varint(schema.mutations.size());
+            for (Mutation mutation : schema.mutations.values()) operation(mutation);
+
+            varint(schema.types.size());
+            for (Type type : schema.types.values()) {
+                string(type.getName());
+                string(type.getTypename());
+                varint(type.getFieldTypeMap().size());
+                for (GqlDef gqlDef : type.getFieldTypeMap()) {
+                    string(gqlDef.getDefName());
+                    string(gqlDef.getRetType().getText());
+                    args(gqlDef.getParams());
+                }
+            }
+
+            varint(schema.unions.size());
+            for (Union union : schema.unions.values()) {
+                string(union.getName());
+                strings(union.getSubTypes());
+            }
+
+            varint(schema.enums.size());
+            for (Enume enume : schema.enums.values()) {
+                string(enume.getName());
+                strings(enume.getEnums());
+            }
+        }
+
+        private void operation(Operation operation) throws IOException {
+            string(operation.getName());
+            string(operation.getRetType().getText());
+            out.writeBoolean(operation.needAuth());
+            args(operation.getArgs());
+        }
+
+        private void cache(CachePolicy cache) throws IOException {
+            out.writeBoolean(cache != null);
+            if (cache == null) return;
+            varint(cache.getTtlSeconds());
+            out.writeByte(cache.getScope().ordinal());
+            varint(cache.getMaxEntries());
+        }
+
+        private void args(Map<String, TypeRef> args) throws IOException {
+            varint(args.size());
+            for (Map.Entry<String, TypeRef> entry : args.entrySet()) {
+                string(entry.getKey());
+                string(entry.getValue().getText());
+            }
+        }
+
+        private void strings(List<String> values) throws IOException {
+            varint(values.size());
+            for (String value : values) string(value);
+        }
+
+        private void string(String value) throws IOException {
+            varint(strings.get(value));
+        }
+
+        private void varint(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+    }
+
+    private static class SnapshotReader {
+        private final ByteBuffer in;
+        private final Symbols symbols = new Symbols();
+        private String[] strings;
+
+        SnapshotReader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        Schema schema() throws IOException {
+            strings = new String[varint()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[varint()];
+                in.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            val builder = Schema.getBuilder(symbols);
+            for (int i = varint(); i > 0; i--) {
+                String name = string();
+                TypeRef retType = typeRef();
+                boolean needAuth = in.get() != 0;
+                Map<String, TypeRef> args = args();
+                builder.appendQuery(new Query(name, retType, args, needAuth, cache()));
+            }
+            for (int i = varint(); i > 0; i--) {
+                String name = string();
+                TypeRef retType = typeRef();
+                boolean needAuth = in.get() != 0;
+                builder.appendMutation(new Mutation(name, retType, args(), needAuth));
+            }
+
+            for (int i = varint(); i > 0; i--) {
+                String name = string();
+                String typename = string();
+                int fieldCount = varint();
+                val fields = new ArrayList<GqlDef>(fieldCount);
+                for (int j = 0; j < fieldCount; j++) {
+                    String defName = string();
+                    TypeRef retType = typeRef();
+                    fields.add(new GqlDef(defName, args(), retType));
+                }
+                builder.appendType(new Type(symbols, name, typename, fields));
+            }
+
+            for (int i = varint(); i > 0; i--) {
+                builder.appendUnion(new Union(symbols, string(), strings()));
+            }
+            for (int i = varint(); i > 0; i--) {
+                builder.appendEnume(new Enume(symbols, string(), strings()));
+            }
+            if (in.hasRemaining()) throw new IOException("trailing bytes in snapshot");
+            return builder.build();
+        }
+
+        private CachePolicy cache() throws IOException {
+            if (in.get() == 0) return null;
+            int ttlSeconds = varint();
+            int scope = in.get();
+            if (scope < 0 || scope >= CachePolicy.Scope.values().length) throw new IOException("unknown cache scope: " + scope);
+            return new CachePolicy(ttlSeconds, CachePolicy.Scope.values()[scope], varint());
+        }
+
+        private Map<String, TypeRef> args() throws IOException {
+            int count = varint();
+            val args = new LinkedHashMap<String, TypeRef>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String name = string();
+                args.put(name, typeRef());
+            }
+            return args;
+        }
+
+        private TypeRef typeRef() throws IOException {
+            return symbols.typeRef(string());
+        }
+
+        private List<String> strings() throws IOException {
+            int count = varint();
+            val values = new ArrayList<String>(count);
+            for (int i = 0; i < count; i++) values.add(string());
+            return values;
+        }
+
+        private String string() throws IOException {
+            int index = varint();
+            if (index >= strings.length) throw new IOException("string index out of range: " + index);
+            return strings[index];
+        }
+
+        private int varint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = in.get();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("malformed varint in snapshot");
+        }
+    }
+}
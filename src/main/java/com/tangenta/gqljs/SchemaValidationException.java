@@ -0,0 +1,21 @@
+package com.tangenta.gqljs;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/** Every problem found while validating a schema, ordered by position. */
+public class SchemaValidationException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final List<ValidationError> errors;
+
+    public SchemaValidationException(List<ValidationError> errors) {
+        super(errors.stream().map(ValidationError::toString).collect(Collectors.joining("\n")));
+        this.errors = Collections.unmodifiableList(errors);
+    }
+
+    public List<ValidationError> getErrors() {
+        return errors;
+    }
+}
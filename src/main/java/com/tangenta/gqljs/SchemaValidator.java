@@ -0,0 +1,163 @@
+package com.tangenta.gqljs;
+
+import com.tangenta.gqljs.schemaType.*;
+import com.tangenta.gqljs.schemaType.util.GqlDef;
+import com.tangenta.gqljs.schemaType.util.Symbols;
+import com.tangenta.gqljs.schemaType.util.TypeRef;
+import lombok.val;
+
+import java.util.*;
+
+/**
+ * Classifies every defined name by its symbol id and then checks every reference against that
+ * index in a single pass, collecting all errors instead of stopping at the first.
+ *
+ * <p>Given the previous valid schema, references of definitions that are the very same objects as
+ * before are not checked again, unless some name changed what it denotes.
+ */
+final class SchemaValidator {
+    final Symbols symbols;
+    private final Map<Object, Position> positions;
+    private final Schema previous;
+    private final List<ValidationError> errors = new ArrayList<>();
+    final Symbols.Kind[] kinds;
+    final Object[] definitions;
+
+    SchemaValidator(Symbols symbols, Map<Object, Position> positions, Schema previous) {
+        this.symbols = symbols;
+        this.kinds = new Symbols.Kind[symbols.size()];
+        this.definitions = new Object[kinds.length];
+        this.positions = positions;
+        this.previous = previous;
+        Arrays.fill(kinds, Symbols.Kind.UNDEFINED);
+        Arrays.fill(kinds, 0, Symbols.SCALAR_COUNT, Symbols.Kind.SCALAR);
+    }
+
+    void validate(List<Query> queries, List<Mutation> mutations, List<Type> types,
+                  List<Union> unions, List<Enume> enums) {
+        types.forEach(type -> define(type, type.getId(),
+                type.getTypename().equals("input") ? Symbols.Kind.INPUT : Symbols.Kind.TYPE));
+        unions.forEach(union -> define(union, union.getId(), Symbols.Kind.UNION));
+        enums.forEach(enume -> define(enume, enume.getId(), Symbols.Kind.ENUM));
+
+        val operationsByName = new HashMap<String, Operation>();
+        for (Operation operation : concat(queries, mutations)) {
+            Operation first = operationsByName.putIfAbsent(operation.getName(), operation);
+            if (first != null) {
+                error(operation, "operation: " + operation.getName() + " is defined more than once" + firstDefined(first));
+            }
+        }
+
+        boolean recheckAll = previous == null || previous.getSymbols() != symbols || kindsChanged(types, unions, enums);
+        for (Query query : queries) {
+            if (recheckAll || previous.queries.get(query.getName()) != query) operation(query);
+        }
+        for (Mutation mutation : mutations) {
+            if (recheckAll || previous.mutations.get(mutation.getName()) != mutation) operation(mutation);
+        }
+        for (Type type : types) {
+            if (recheckAll || previous.definitionAt(type.getId()) != type) type(type);
+        }
+        for (Union union : unions) {
+            if (recheckAll || previous.definitionAt(union.getId()) != union) union(union);
+        }
+
+        if (!errors.isEmpty()) {
+            errors.sort(Comparator.comparing(ValidationError::getPosition, Comparator.nullsLast(
+                    Comparator.comparing(Position::getFile, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+                            .thenComparingInt(Position::getLine)
+                            .thenComparingInt(Position::getColumn))));
+            throw new SchemaValidationException(errors);
+        }
+    }
+
+    private void define(Object definition, int id, Symbols.Kind kind) {
+        if (kinds[id] == Symbols.Kind.SCALAR) {
+            error(definition, "name: " + symbols.name(id) + " is a built-in scalar");
+        } else if (kinds[id] != Symbols.Kind.UNDEFINED) {
+            error(definition, "name: " + symbols.name(id) + " is used for more than once in (union | type | enum)"
+                    + firstDefined(definitions[id]));
+        } else {
+            kinds[id] = kind;
+            definitions[id] = definition;
+        }
+    }
+
+    private boolean kindsChanged(List<Type> types, List<Union> unions, List<Enume> enums) {
+        int defined = types.size() + unions.size() + enums.size();
+        if (defined != previous.types.size() + previous.unions.size() + previous.enums.size()) return true;
+        for (int id = Symbols.SCALAR_COUNT; id < kinds.length; id++) {
+            if (kinds[id] != previous.kindOf(id)) return true;
+        }
+        return false;
+    }
+
+    private void operation(Operation operation) {
+        String where = operation.getOperType() + " " + operation.getName();
+        output(operation, operation.getRetTypeId(), where);
+        arguments(operation, operation.getArgs(), where);
+    }
+
+    private void type(Type type) {
+        boolean input = kinds[type.getId()] == Symbols.Kind.INPUT;
+        for (GqlDef gqlDef : type.getFieldTypeMap()) {
+            String where = type.getName() + "." + gqlDef.getDefName();
+            if (input) input(type, gqlDef.getRetTypeId(), where);
+            else output(type, gqlDef.getRetTypeId(), where);
+            arguments(type, gqlDef.getParams(), where);
+        }
+    }
+
+    private void union(Union union) {
+        for (int i = 0; i < union.getSubTypes().size(); i++) {
+            int id = union.getSubTypeId(i);
+            if (kindOf(id) == Symbols.Kind.TYPE) continue;
+            if (kindOf(id) == Symbols.Kind.UNDEFINED) undefined(union, id, "union " + union.getName());
+            else error(union, "type: " + symbols.name(id) + " is not an object type (union " + union.getName() + ")");
+        }
+    }
+
+    private void arguments(Object definition, Map<String, TypeRef> args, String where) {
+        args.forEach((name, argType) -> input(definition, argType.getBaseId(), "argument " + name + " of " + where));
+    }
+
+    private void output(Object definition, int id, String where) {
+        Symbols.Kind kind = kindOf(id);
+        if (kind == Symbols.Kind.UNDEFINED) undefined(definition, id, where);
+        else if (kind == Symbols.Kind.INPUT) {
+            error(definition, "type: " + symbols.name(id) + " is an input type and cannot be returned (" + where + ")");
+        }
+    }
+
+    private void input(Object definition, int id, String where) {
+        Symbols.Kind kind = kindOf(id);
+        if (kind == Symbols.Kind.UNDEFINED) undefined(definition, id, where);
+        else if (kind == Symbols.Kind.TYPE || kind == Symbols.Kind.UNION) {
+            error(definition, "type: " + symbols.name(id) + " is not an input type (" + where + ")");
+        }
+    }
+
+    private void undefined(Object definition, int id, String where) {
+        error(definition, "type: " + symbols.name(id) + " is not defined (" + where + ")");
+    }
+
+    private String firstDefined(Object definition) {
+        Position position = positions.get(definition);
+        return position == null ? "" : " (first defined at " + position + ")";
+    }
+
+    private Symbols.Kind kindOf(int id) {
+        return id < kinds.length ? kinds[id] : Symbols.Kind.UNDEFINED;
+    }
+
+    private void error(Object definition, String message) {
+        errors.add(new ValidationError(message, positions.get(definition)));
+    }
+
+    private static List<Operation> concat(List<? extends Operation> first, List<? extends Operation> second) {
+        val result = new ArrayList<Operation>(first.size() + second.size());
+        result.addAll(first);
+        result.addAll(second);
+        return result;
+    }
+}
@@ -0,0 +1,128 @@
+package com.tangenta.gqljs;
+
+import com.tangenta.gqljs.schemaType.Operation;
+import lombok.val;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the generated JS files up to date with a schema file. On every change only the definitions
+ * around the edit are re-parsed, and only operations that are edited or reach an edited type, input,
+ * union or enum are rendered again, see {@link Schema#operationsReaching}; all other operations keep
+ * their previously rendered blocks.
+ *
+ * <p>Print options apply as in a full run, except fragment extraction: fragments depend on every
+ * operation at once, so the constructor rejects options with a fragment threshold.
+ */
+public class SchemaWatcher {
+    private static final long SETTLE_MILLIS = 20;
+
+    private final Path schemaPath;
+    private final Path constPath;
+    private final Path funcPath;
+    private final PrintOptions options;
+    private final Map<String, String> constBlocks = new HashMap<>();
+    private final Map<String, String> funcBlocks = new HashMap<>();
+    private ParsedSchema parsed;
+
+    public SchemaWatcher(Path schemaPath, Path constPath, Path funcPath) {
+        this(schemaPath, constPath, funcPath, PrintOptions.DEFAULT);
+    }
+
+    public SchemaWatcher(Path schemaPath, Path constPath, Path funcPath, PrintOptions options) {
+        if (options.getFragmentThreshold() != 0) throw new RuntimeException("--fragments cannot be used with --watch");
+        this.schemaPath = schemaPath.toAbsolutePath();
+        this.constPath = constPath;
+        this.funcPath = funcPath;
+        this.options = options;
+    }
+
+    public void run() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        parsed = ParsedSchema.parse(readSchema());
+        int rendered = regenerate(parsed.getSchema().allOperations().map(Operation::getName).collect(Collectors.toSet()));
+        report(rendered, start);
+
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            schemaPath.getParent().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean touched = false;
+                // editors often save in several steps, so wait for the events to settle
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        touched |= schemaPath.getFileName().equals(event.context());
+                    }
+                    key.reset();
+                    key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (touched) update();
+            }
+        }
+    }
+
+    private void update() throws IOException {
+        long start = System.nanoTime();
+        String source = readSchema();
+        if (source.equals(parsed.getSource())) return;
+
+        ParsedSchema next;
+        try {
+            next = parsed.update(source);
+        } catch (RuntimeException e) {
+            System.err.println(schemaPath + ": " + e.getMessage());
+            return;
+        }
+        parsed = next;
+        report(regenerate(next.getSchema().operationsAffectedBy(next.getChangedOperations(), next.getChangedTypes())), start);
+    }
+
+    private int regenerate(Set<String> affected) throws IOException {
+        Schema schema = parsed.getSchema();
+        val operations = schema.allOperations().collect(Collectors.toList());
+        val names = operations.stream().map(Operation::getName).collect(Collectors.toSet());
+        constBlocks.keySet().retainAll(names);
+        funcBlocks.keySet().retainAll(names);
+
+        val cache = new SelectionCache();
+        int rendered = 0;
+        for (Operation op : operations) {
+            if (!affected.contains(op.getName()) && constBlocks.containsKey(op.getName())) continue;
+            constBlocks.put(op.getName(), GQLPrinter.toJSConst(schema, op, cache, options));
+            funcBlocks.put(op.getName(), GQLPrinter.toJSFunc(schema, op, cache, options));
+            rendered++;
+        }
+        write(constPath, "", operations, constBlocks);
+        write(funcPath, GQLPrinter.jsFuncPreamble(schema, options), operations, funcBlocks);
+        return rendered;
+    }
+
+    private static void write(Path path, String preamble, List<Operation> operations,
+                              Map<String, String> blocks) throws IOException {
+        try (Writer writer = Application.openWriter(path.toString())) {
+            writer.append(preamble);
+            for (int i = 0; i < operations.size(); i++) {
+                if (i != 0) writer.append("\n");
+                writer.append(blocks.get(operations.get(i).getName()));
+            }
+        }
+    }
+
+    private void report(int rendered, long start) {
+        System.out.printf("%s: rendered %d of %d operations in %.1f ms%n", schemaPath.getFileName(), rendered,
+                parsed.getSchema().queries.size() + parsed.getSchema().mutations.size(),
+                (System.nanoTime() - start) / 1e6);
+        if (Metrics.isEnabled()) System.err.println(Metrics.report());
+    }
+
+    private String readSchema() throws IOException {
+        return new String(Files.readAllBytes(schemaPath), StandardCharsets.UTF_8);
+    }
+}
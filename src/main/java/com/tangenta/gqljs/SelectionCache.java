@@ -0,0 +1,57 @@
+package com.tangenta.gqljs;
+
+import lombok.val;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rendered selection sets indexed by type id and indentation depth, so a type reached from many
+ * places is rendered once per generation run. Safe to share between threads rendering in parallel;
+ * two threads may occasionally render the same entry, which is harmless because rendering is
+ * deterministic.
+ */
+public class SelectionCache {
+    private volatile AtomicReferenceArray<String[]> selections = new AtomicReferenceArray<>(64);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    String get(int typeId, int depth) {
+        val current = selections;
+        String[] byDepth = typeId < current.length() ? current.get(typeId) : null;
+        String result = byDepth != null && depth < byDepth.length ? byDepth[depth] : null;
+        if (result != null) {
+            hits.increment();
+            Metrics.count(Metrics.Counter.SELECTION_CACHE_HITS, 1);
+        } else {
+            misses.increment();
+            Metrics.count(Metrics.Counter.SELECTION_CACHE_MISSES, 1);
+        }
+        return result;
+    }
+
+    synchronized void put(int typeId, int depth, String selection) {
+        val current = selections.length() > typeId ? selections : grow(Math.max(selections.length() * 2, typeId + 1));
+        String[] byDepth = current.get(typeId);
+        String[] updated = byDepth == null ? new String[depth + 1]
+                : Arrays.copyOf(byDepth, Math.max(byDepth.length, depth + 1));
+        updated[depth] = selection;
+        current.set(typeId, updated);
+    }
+
+    private AtomicReferenceArray<String[]> grow(int length) {
+        val grown = new AtomicReferenceArray<String[]>(length);
+        for (int i = 0; i < selections.length(); i++) grown.set(i, selections.get(i));
+        selections = grown;
+        return grown;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+}
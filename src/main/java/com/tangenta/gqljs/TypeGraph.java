@@ -0,0 +1,103 @@
+package com.tangenta.gqljs;
+
+import lombok.val;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The graph of types and unions, with an edge from a type to each type or union its fields return
+ * and from a union to each of its members. Nodes are symbol ids of the schema's table.
+ */
+final class TypeGraph {
+    private static final int[] NONE = new int[0];
+
+    private final int[] nodes;
+    private final int[][] successors;
+    private int size;
+
+    /** An empty graph for nodes with ids below {@code idLimit}. */
+    TypeGraph(int idLimit) {
+        this.nodes = new int[idLimit];
+        this.successors = new int[idLimit][];
+    }
+
+    /** Adds {@code node}, with edges to {@code targets}; edges to ids that are never added are ignored. */
+    void add(int node, int[] targets) {
+        if (successors[node] == null) nodes[size++] = node;
+        successors[node] = targets;
+    }
+
+    boolean contains(int node) {
+        return node >= 0 && node < successors.length && successors[node] != null;
+    }
+
+    int[] successorsOf(int node) {
+        return contains(node) ? successors[node] : NONE;
+    }
+
+    /**
+     * Strongly connected components in reverse topological order, so every component comes after
+     * all components it has edges to. Members of a component are listed in discovery order.
+     * Implemented as an iterative Tarjan's algorithm so deep graphs cannot overflow the stack.
+     */
+    List<int[]> components() {
+        val result = new ArrayList<int[]>();
+        int[] index = new int[successors.length];
+        int[] lowLink = new int[successors.length];
+        boolean[] onStack = new boolean[successors.length];
+        Arrays.fill(index, -1);
+        int[] stack = new int[size];
+        int stackSize = 0;
+        int[] callNodes = new int[size];
+        int[] callEdges = new int[size];
+        int callSize = 0;
+        int visited = 0;
+
+        for (int n = 0; n < size; n++) {
+            int root = nodes[n];
+            if (index[root] >= 0) continue;
+            index[root] = lowLink[root] = visited++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+            callNodes[callSize] = root;
+            callEdges[callSize++] = 0;
+
+            while (callSize > 0) {
+                int node = callNodes[callSize - 1];
+                int[] targets = successors[node];
+                if (callEdges[callSize - 1] < targets.length) {
+                    int next = targets[callEdges[callSize - 1]++];
+                    if (!contains(next)) continue;
+                    if (index[next] < 0) {
+                        index[next] = lowLink[next] = visited++;
+                        stack[stackSize++] = next;
+                        onStack[next] = true;
+                        callNodes[callSize] = next;
+                        callEdges[callSize++] = 0;
+                    } else if (onStack[next]) {
+                        lowLink[node] = Math.min(lowLink[node], index[next]);
+                    }
+                    continue;
+                }
+
+                callSize--;
+                if (callSize > 0) {
+                    int parent = callNodes[callSize - 1];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+                }
+                if (lowLink[node] == index[node]) {
+                    int start = stackSize;
+                    do {
+                        onStack[stack[--start]] = false;
+                    } while (stack[start] != node);
+                    // members were pushed in discovery order
+                    result.add(Arrays.copyOfRange(stack, start, stackSize));
+                    stackSize = start;
+                }
+            }
+        }
+        return result;
+    }
+}
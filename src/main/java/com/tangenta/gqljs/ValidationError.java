@@ -0,0 +1,15 @@
+package com.tangenta.gqljs;
+
+import lombok.Value;
+
+@Value
+public class ValidationError {
+    String message;
+    /** Position of the definition containing the error, or null if the definition was built without one. */
+    Position position;
+
+    @Override
+    public String toString() {
+        return position == null ? message : message + " at " + position;
+    }
+}
@@ -0,0 +1,19 @@
+package com.tangenta.gqljs.schemaType;
+
+import lombok.Value;
+
+/**
+ * Client-side caching of a query's responses, from its {@code @cache} directive. Responses are
+ * kept for {@code ttlSeconds} per distinct set of variables, and per user as well when the scope is
+ * {@link Scope#USER}; at most {@code maxEntries} are kept, least recently used first out.
+ */
+@Value
+public class CachePolicy {
+    public enum Scope {PUBLIC, USER}
+
+    public static final int DEFAULT_MAX_ENTRIES = 100;
+
+    int ttlSeconds;
+    Scope scope;
+    int maxEntries;
+}
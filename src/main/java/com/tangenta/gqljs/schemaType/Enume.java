@@ -1,11 +1,24 @@
 package com.tangenta.gqljs.schemaType;
 
+import com.tangenta.gqljs.schemaType.util.Symbols;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import lombok.Value;
 
+import java.util.Collections;
 import java.util.List;
 
 @Value
 public class Enume {
     String name;
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    int id;
     List<String> enums;
+
+    public Enume(Symbols symbols, String name, List<String> enums) {
+        this.name = name;
+        this.id = symbols.intern(name);
+        this.enums = Collections.unmodifiableList(enums);
+    }
 }
@@ -1,12 +1,17 @@
 package com.tangenta.gqljs.schemaType;
 
+import com.tangenta.gqljs.schemaType.util.TypeRef;
+
 import java.util.Map;
 
 public interface Operation {
     String getOperType();
     String getName();
-    String getRetType();
+    TypeRef getRetType();
     String getStrippedRetType();
-    Map<String, String> getArgs();
+    int getRetTypeId();
+    Map<String, TypeRef> getArgs();
     boolean needAuth();
+    /** How clients may cache the responses, or null if they may not. */
+    CachePolicy getCache();
 }
@@ -1,22 +1,27 @@
 package com.tangenta.gqljs.schemaType;
 
-import com.tangenta.gqljs.schemaType.util.Util;
+import com.tangenta.gqljs.schemaType.util.TypeRef;
 
+import java.util.Collections;
 import java.util.Map;
 
 final public class Query implements Operation {
-    private String name;
-    private String retType;
-    private String strippedRetType;
-    private Map<String, String> args;
-    private boolean needAuth;
+    private final String name;
+    private final TypeRef retType;
+    private final Map<String, TypeRef> args;
+    private final boolean needAuth;
+    private final CachePolicy cache;
 
-    public Query(String name, String retType, Map<String, String> args, boolean needAuth) {
+    public Query(String name, TypeRef retType, Map<String, TypeRef> args, boolean needAuth) {
+        this(name, retType, args, needAuth, null);
+    }
+
+    public Query(String name, TypeRef retType, Map<String, TypeRef> args, boolean needAuth, CachePolicy cache) {
         this.name = name;
         this.retType = retType;
-        this.strippedRetType = Util.strip(retType);
-        this.args = args;
+        this.args = Collections.unmodifiableMap(args);
         this.needAuth = needAuth;
+        this.cache = cache;
     }
 
     @Override
@@ -30,17 +35,22 @@ final public class Query implements Operation {
     }
 
     @Override
-    public String getRetType() {
+    public TypeRef getRetType() {
         return retType;
     }
 
     @Override
     public String getStrippedRetType() {
-        return strippedRetType;
+        return retType.getBase();
+    }
+
+    @Override
+    public int getRetTypeId() {
+        return retType.getBaseId();
     }
 
     @Override
-    public Map<String, String> getArgs() {
+    public Map<String, TypeRef> getArgs() {
         return args;
     }
 
@@ -48,4 +58,9 @@ final public class Query implements Operation {
     public boolean needAuth() {
         return needAuth;
     }
+
+    @Override
+    public CachePolicy getCache() {
+        return cache;
+    }
 }
\ No newline at end of file
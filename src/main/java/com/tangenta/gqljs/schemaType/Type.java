@@ -1,25 +1,32 @@
 package com.tangenta.gqljs.schemaType;
 
 import com.tangenta.gqljs.schemaType.util.GqlDef;
+import com.tangenta.gqljs.schemaType.util.Symbols;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import lombok.Value;
 
+import java.util.Collections;
 import java.util.List;
 
 @Value
 public class Type {
-    private static final String[] SCALARS = {
-            "ID", "Int", "Long", "String", "Boolean"
-    };
     String name;
+    /** Depends on the symbol table the type was parsed with, so it is left out of equals and toString. */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    int id;
     String typename;
     List<GqlDef> fieldTypeMap;
 
+    public Type(Symbols symbols, String name, String typename, List<GqlDef> fieldTypeMap) {
+        this.name = name;
+        this.id = symbols.intern(name);
+        this.typename = typename;
+        this.fieldTypeMap = Collections.unmodifiableList(fieldTypeMap);
+    }
+
     public static boolean isScalar(String typename) {
-        for (String scalar : SCALARS) {
-            if (typename.equals(scalar)) {
-                return true;
-            }
-        }
-        return false;
+        return Symbols.isScalar(typename);
     }
 }
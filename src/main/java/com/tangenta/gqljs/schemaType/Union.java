@@ -1,19 +1,39 @@
 package com.tangenta.gqljs.schemaType;
 
+import com.tangenta.gqljs.schemaType.util.Symbols;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
 import lombok.Value;
 
+import java.util.Collections;
 import java.util.List;
 
 @Value
 public class Union {
     String name;
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    int id;
     List<String> subTypes;
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    int[] subTypeIds;
 
-    public Union(String name, List<String> subTypes) {
+    public Union(Symbols symbols, String name, List<String> subTypes) {
         if (subTypes.contains(name)) {
             throw new RuntimeException("Union type: " + name + " is compose of itself");
         }
         this.name = name;
-        this.subTypes = subTypes;
+        this.id = symbols.intern(name);
+        this.subTypes = Collections.unmodifiableList(subTypes);
+        this.subTypeIds = new int[subTypes.size()];
+        for (int i = 0; i < subTypeIds.length; i++) subTypeIds[i] = symbols.intern(subTypes.get(i));
+    }
+
+    public int getSubTypeId(int index) {
+        return subTypeIds[index];
     }
 }
@@ -0,0 +1,93 @@
+package com.tangenta.gqljs.schemaType.util;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Table of the type names interned by one schema load. Every name gets a dense, stable integer id,
+ * so references can be resolved by indexing arrays instead of hashing and comparing strings. The
+ * built-in scalars are interned first and occupy the ids below {@link #SCALAR_COUNT} in every table.
+ *
+ * <p>Definitions and type references carry ids of the table they were parsed with, so everything
+ * built into one schema must share a table; schemas updated incrementally keep their predecessor's.
+ * Safe to share between threads parsing files of the same schema concurrently.
+ */
+public final class Symbols {
+    /** What a symbol denotes within one schema. */
+    public enum Kind {UNDEFINED, SCALAR, TYPE, INPUT, UNION, ENUM}
+
+    private static final String[] SCALARS = {
+            "ID", "Int", "Long", "String", "Boolean"
+    };
+    public static final int SCALAR_COUNT = SCALARS.length;
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, TypeRef> refs = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[64];
+    private int size;
+
+    public Symbols() {
+        for (String scalar : SCALARS) intern(scalar);
+    }
+
+    public int intern(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : add(name);
+    }
+
+    private synchronized int add(String name) {
+        Integer id = ids.get(name);
+        if (id != null) return id;
+        String[] current = names;
+        if (size == current.length) current = Arrays.copyOf(current, size * 2);
+        current[size] = name;
+        // publish the name before its id becomes visible
+        names = current;
+        ids.put(name, size);
+        return size++;
+    }
+
+    /**
+     * The reference written as {@code text}, parsed once per table so equal references are the same
+     * object. Throws {@link IllegalArgumentException} if {@code text} has no name or unbalanced brackets.
+     */
+    public TypeRef typeRef(String text) {
+        TypeRef ref = refs.get(text);
+        if (ref != null) return ref;
+        ref = TypeRef.parse(text, this);
+        TypeRef raced = refs.putIfAbsent(text, ref);
+        return raced != null ? raced : ref;
+    }
+
+    /** The id of {@code name}, or -1 if it was never interned. */
+    public int lookup(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    public static boolean isScalar(int id) {
+        return id >= 0 && id < SCALAR_COUNT;
+    }
+
+    public static boolean isScalar(String name) {
+        for (String scalar : SCALARS) {
+            if (scalar.equals(name)) return true;
+        }
+        return false;
+    }
+
+    /** Number of names interned so far. */
+    public int count() {
+        return ids.size();
+    }
+
+    /** Upper bound of all ids handed out so far. */
+    public int size() {
+        return names.length;
+    }
+}
@@ -0,0 +1,113 @@
+package com.tangenta.gqljs.schemaType.util;
+
+/**
+ * A parsed type reference such as {@code [[HotItem!]]!}: a named base type wrapped in any number of
+ * lists, each level nullable or not. References are interned by the {@link Symbols} table of their
+ * schema, see {@link Symbols#typeRef}; references of different tables are equal if written alike.
+ *
+ * <p>Trailing {@code !} are stripped before a pair of enclosing brackets at every level, so
+ * {@code [X]!!} is a non-null list of {@code X}. Anything else left around the name, as in
+ * {@code [Int} or {@code Int]}, is rejected.
+ */
+public final class TypeRef {
+    private final String text;
+    private final boolean nonNull;
+    private final TypeRef element;
+    private final String base;
+    private final int baseId;
+    private final int listDepth;
+
+    private TypeRef(String text, boolean nonNull, TypeRef element, String base, Symbols symbols) {
+        this.text = text;
+        this.nonNull = nonNull;
+        this.element = element;
+        this.base = element != null ? element.base : base;
+        this.baseId = element != null ? element.baseId : symbols.intern(base);
+        this.listDepth = element != null ? element.listDepth + 1 : 0;
+    }
+
+    static TypeRef parse(String text, Symbols symbols) {
+        int end = text.length();
+        while (end > 0 && text.charAt(end - 1) == '!') end--;
+        boolean nonNull = end < text.length();
+        if (end >= 2 && text.charAt(0) == '[' && text.charAt(end - 1) == ']') {
+            return new TypeRef(text, nonNull, symbols.typeRef(text.substring(1, end - 1)), null, symbols);
+        }
+        String base = text.substring(0, end);
+        if (base.isEmpty()) throw new IllegalArgumentException("type: " + text + " has no name");
+        for (int i = 0; i < base.length(); i++) {
+            char ch = base.charAt(i);
+            if (ch == '[' || ch == ']' || ch == '!') throw new IllegalArgumentException("type: " + text + " has unbalanced brackets");
+        }
+        return new TypeRef(text, nonNull, null, base, symbols);
+    }
+
+    /** The reference as written in the schema. */
+    public String getText() {
+        return text;
+    }
+
+    /** The named type inside all lists. */
+    public String getBase() {
+        return base;
+    }
+
+    public int getBaseId() {
+        return baseId;
+    }
+
+    public boolean isNonNull() {
+        return nonNull;
+    }
+
+    public boolean isList() {
+        return element != null;
+    }
+
+    /** The reference one list level down, or null if this is not a list. */
+    public TypeRef getElement() {
+        return element;
+    }
+
+    public int getListDepth() {
+        return listDepth;
+    }
+
+    /** Whether the value at {@code level} is non-null, level 0 being the outermost and the base the deepest. */
+    public boolean isNonNull(int level) {
+        TypeRef ref = this;
+        for (int i = 0; i < level; i++) ref = ref.element;
+        return ref.nonNull;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return this == other || other instanceof TypeRef && text.equals(((TypeRef) other).text);
+    }
+
+    @Override
+    public int hashCode() {
+        return text.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    public static void main(String[] args) {
+        Symbols symbols = new Symbols();
+        TypeRef ref = symbols.typeRef("[[Xtx!]]!");
+        System.out.println(ref.getBase() + " " + ref.getListDepth() + " " + ref.isNonNull(0) + ref.isNonNull(1) + ref.isNonNull(2));
+        System.out.println(symbols.typeRef("HostResult!").getBase() + " "
+                + (symbols.typeRef("HostResult!") == symbols.typeRef("HostResult!")) + " "
+                + symbols.typeRef("HostResult!").equals(new Symbols().typeRef("HostResult!")));
+        for (String unbalanced : new String[]{"[Int", "Int]", "[[Int]!"}) {
+            try {
+                symbols.typeRef(unbalanced);
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+}